@@ -0,0 +1,100 @@
+package com.agarg.securecollab.chatservice.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EncryptionService throughput and allocation per payload size
+ * Run with the jmh profile (mvn -Pjmh verify), which adds -prof gc so each result also
+ * reports gc.alloc.rate.norm, the bytes allocated per operation. The String benchmarks
+ * cover the Base64 API, the buffer ones the IV || ciphertext || tag path with reused
+ * heap and direct buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionServiceBenchmark {
+
+    private static final String KEY_ID = "bench";
+
+    @Param({"100", "4096", "1048576"})
+    private int payloadSize;
+
+    private final EncryptionService service = new EncryptionService();
+
+    private String text;
+    private EncryptionService.EncryptedPayload encryptedText;
+    private ByteBuffer plain;
+    private ByteBuffer sealed;
+    private ByteBuffer sealedOut;
+    private ByteBuffer plainOut;
+    private ByteBuffer directPlain;
+    private ByteBuffer directSealedOut;
+
+    @Setup
+    public void setUp() {
+        service.generateKey(KEY_ID);
+
+        // ASCII so the String and byte payloads are the same size
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'a');
+        text = new String(chars);
+        encryptedText = service.encrypt(text, KEY_ID);
+
+        byte[] bytes = new byte[payloadSize];
+        Arrays.fill(bytes, (byte) 'a');
+        plain = ByteBuffer.wrap(bytes);
+        sealedOut = ByteBuffer.allocate(EncryptionService.encryptedSize(payloadSize));
+        plainOut = ByteBuffer.allocate(payloadSize);
+
+        sealed = ByteBuffer.allocate(EncryptionService.encryptedSize(payloadSize));
+        service.encrypt(plain.duplicate(), sealed, KEY_ID);
+        sealed.flip();
+
+        directPlain = ByteBuffer.allocateDirect(payloadSize).put(bytes).flip();
+        directSealedOut = ByteBuffer.allocateDirect(EncryptionService.encryptedSize(payloadSize));
+    }
+
+    @Benchmark
+    public EncryptionService.EncryptedPayload encryptString() {
+        return service.encrypt(text, KEY_ID);
+    }
+
+    @Benchmark
+    public String decryptString() {
+        return service.decrypt(encryptedText);
+    }
+
+    @Benchmark
+    public int encryptBuffer() {
+        sealedOut.clear();
+        return service.encrypt(plain.duplicate(), sealedOut, KEY_ID);
+    }
+
+    @Benchmark
+    public int decryptBuffer() {
+        plainOut.clear();
+        return service.decrypt(sealed.duplicate(), plainOut, KEY_ID);
+    }
+
+    @Benchmark
+    public int encryptDirectBuffer() {
+        directSealedOut.clear();
+        return service.encrypt(directPlain.duplicate(), directSealedOut, KEY_ID);
+    }
+}
@@ -0,0 +1,39 @@
+package com.agarg.securecollab.chatservice;
+
+import com.agarg.securecollab.chatservice.service.OfflineMessagePruner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Standalone entry point for the prune-offline-messages CronJob (k8s-cronjob.yaml).
+ * Starts chat-service without the web server, listeners or schedulers, runs one prune and exits.
+ */
+public class PruneOfflineMessagesJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(PruneOfflineMessagesJob.class);
+
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+            .web(WebApplicationType.NONE)
+            .properties(
+                // No @Scheduled job may run in the batch container, only the prune below
+                "securecollab.scheduling.enabled=false",
+                "spring.kafka.listener.auto-startup=false",
+                "spring.rabbitmq.listener.simple.auto-startup=false")
+            .run(args);
+        int exitCode;
+        try {
+            context.getBean(OfflineMessagePruner.class).prune();
+            exitCode = 0;
+        } catch (Exception e) {
+            logger.error("Offline message prune failed", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
@@ -0,0 +1,16 @@
+package com.agarg.securecollab.chatservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the @Scheduled jobs (offline spill and prune, partition maintenance, blob GC,
+ * access log pruning). One-shot entry points such as PruneOfflineMessagesJob turn it off
+ * with securecollab.scheduling.enabled=false.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "securecollab.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
@@ -4,6 +4,7 @@ import com.agarg.securecollab.chatservice.model.*;
 import com.agarg.securecollab.chatservice.service.*;
 import com.agarg.securecollab.chatservice.messaging.EventPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,6 +22,8 @@ public class ChatApiController {
     
     private static final Logger logger = LoggerFactory.getLogger(ChatApiController.class);
     
+    private static final int MAX_PENDING_PAGE_SIZE = 500;
+    
     @Autowired private ToxicityDetectionService toxicityService;
     @Autowired private EncryptionService encryptionService;
     @Autowired private OfflineMessageQueueService offlineQueueService;
@@ -95,6 +98,40 @@ public class ChatApiController {
         }
     }
     
+    /**
+     * Get one keyset page of pending messages; nothing is deleted until acknowledged
+     */
+    @GetMapping("/pending-messages/{userId}/page")
+    public ResponseEntity<?> getPendingMessagePage(@PathVariable String userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) java.time.LocalDateTime afterCreatedAt,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) String afterStreamId,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            int pageSize = Math.max(1, Math.min(limit, MAX_PENDING_PAGE_SIZE));
+            return ResponseEntity.ok(offlineQueueService.getPendingPage(userId, afterCreatedAt, afterId,
+                afterStreamId, pageSize));
+        } catch (Exception e) {
+            logger.error("Error retrieving pending message page", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error retrieving messages");
+        }
+    }
+    
+    /**
+     * Acknowledge delivered pending messages so they are deleted
+     */
+    @PostMapping("/pending-messages/{userId}/ack")
+    public ResponseEntity<?> acknowledgePendingMessages(@PathVariable String userId,
+                                                        @RequestBody PendingAck request) {
+        try {
+            int deleted = offlineQueueService.acknowledge(userId, request.ids(), request.streamIds());
+            return ResponseEntity.ok(Map.of("deleted", deleted));
+        } catch (Exception e) {
+            logger.error("Error acknowledging pending messages", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error acknowledging messages");
+        }
+    }
+    
     /**
      * Get offline queue statistics
      */
@@ -243,6 +280,11 @@ public class ChatApiController {
         }
     }
     
+    /**
+     * Acknowledged pending messages: Postgres row ids and Redis stream ids
+     */
+    public record PendingAck(List<Long> ids, List<String> streamIds) { }
+    
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("Chat Service is running");
@@ -0,0 +1,33 @@
+package com.agarg.securecollab.chatservice.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Reference count of a stored blob; rows at zero are reclaimed by the blob garbage collector
+ */
+@Entity
+@Table(name = "blob_refs")
+public class BlobRefEntity {
+
+    @Id
+    @Column(name = "blob_id", nullable = false, length = 64)
+    private String blobId;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public BlobRefEntity() {
+    }
+
+    public String getBlobId() { return blobId; }
+    public long getRefCount() { return refCount; }
+    public long getSizeBytes() { return sizeBytes; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
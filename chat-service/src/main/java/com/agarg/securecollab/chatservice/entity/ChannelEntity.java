@@ -30,6 +30,10 @@ public class ChannelEntity {
     @Column(name = "members")
     private List<String> members;
 
+    // Opt-in: attachments in this channel are stored deduplicated (null on older rows = off)
+    @Column(name = "dedup_files")
+    private Boolean dedupFiles;
+
     public ChannelEntity() {}
 
     public ChannelEntity(String channelId, String name, String description, String type, String ownerId, LocalDateTime createdAt, List<String> members) {
@@ -56,5 +60,7 @@ public class ChannelEntity {
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     public List<String> getMembers() { return members; }
     public void setMembers(List<String> members) { this.members = members; }
+    public boolean isDedupFiles() { return Boolean.TRUE.equals(dedupFiles); }
+    public void setDedupFiles(boolean dedupFiles) { this.dedupFiles = dedupFiles; }
     public String getId() { return channelId; }
 }
@@ -0,0 +1,43 @@
+package com.agarg.securecollab.chatservice.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One download of a shared file; rows are only ever inserted, and removed by
+ * retention once older than securecollab.file-sharing.access-log.retention-days
+ */
+@Entity
+@Table(name = "file_access_log", indexes = {
+    @Index(name = "idx_file_access_log_file_time", columnList = "file_id, access_time, id"),
+    @Index(name = "idx_file_access_log_time", columnList = "access_time")
+})
+public class FileAccessLogEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_id", nullable = false)
+    private String fileId;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "access_time", nullable = false)
+    private LocalDateTime accessTime;
+
+    public FileAccessLogEntity() {
+    }
+
+    public FileAccessLogEntity(String fileId, String userId, LocalDateTime accessTime) {
+        this.fileId = fileId;
+        this.userId = userId;
+        this.accessTime = accessTime;
+    }
+
+    public Long getId() { return id; }
+    public String getFileId() { return fileId; }
+    public String getUserId() { return userId; }
+    public LocalDateTime getAccessTime() { return accessTime; }
+}
@@ -4,14 +4,22 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "offline_messages")
+@Table(name = "offline_messages", indexes = {
+    // Keyset pagination and COUNT per recipient
+    @Index(name = "idx_offline_recipient_created_id", columnList = "recipient_id, created_at, id")
+}, uniqueConstraints = {
+    // A message id is unique per recipient; expires_at is part of the key because unique keys of
+    // a table partitioned by it (db/offline_messages_partitioning.sql) must include it
+    @UniqueConstraint(name = "uk_offline_messages_recipient_message_expires",
+        columnNames = {"recipient_id", "message_id", "expires_at"})
+})
 public class OfflineMessageEntity {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "message_id", nullable = false, unique = true)
+    @Column(name = "message_id", nullable = false)
     private String messageId;
 
     @Column(name = "recipient_id", nullable = false)
@@ -23,8 +31,9 @@ public class OfflineMessageEntity {
     @Column(name = "sender_id")
     private String senderId;
 
-    @Lob
-    @Column(name = "encrypted_payload", nullable = false)
+    // Plain text, not @Lob: Hibernate maps a @Lob String to a PostgreSQL oid (large object),
+    // which the partitioned table and the Redis tier's spill insert cannot use
+    @Column(name = "encrypted_payload", nullable = false, columnDefinition = "text")
     private String encryptedPayload;
 
     @Column(name = "status")
@@ -33,7 +42,7 @@ public class OfflineMessageEntity {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
-    @Column(name = "expires_at")
+    @Column(name = "expires_at", nullable = false)
     private LocalDateTime expiresAt;
 
     public OfflineMessageEntity() {
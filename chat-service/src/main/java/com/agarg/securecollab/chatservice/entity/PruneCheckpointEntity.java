@@ -0,0 +1,38 @@
+package com.agarg.securecollab.chatservice.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a chunked pruning job; lets an interrupted run resume after the last deleted id
+ */
+@Entity
+@Table(name = "prune_checkpoints")
+public class PruneCheckpointEntity {
+
+    @Id
+    @Column(name = "job_name", nullable = false)
+    private String jobName;
+
+    @Column(name = "last_id", nullable = false)
+    private long lastId;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public PruneCheckpointEntity() {
+    }
+
+    public PruneCheckpointEntity(String jobName, long lastId, LocalDateTime updatedAt) {
+        this.jobName = jobName;
+        this.lastId = lastId;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getJobName() { return jobName; }
+    public void setJobName(String jobName) { this.jobName = jobName; }
+    public long getLastId() { return lastId; }
+    public void setLastId(long lastId) { this.lastId = lastId; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,124 @@
+package com.agarg.securecollab.chatservice.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Metadata of a shared file; the encrypted body lives in the blob store as content-addressed
+ * chunks, listed here in order. Deduplicated files reference convergently sealed chunks that
+ * other files may share; their per-chunk keys are kept wrapped under the file's own key.
+ */
+@Entity
+@Table(name = "shared_files", indexes = {
+    // Channel listing, newest first, keyset-paginated on (uploaded_at, file_id)
+    @Index(name = "idx_shared_files_channel_uploaded", columnList = "channel_id, uploaded_at, file_id")
+})
+public class SharedFileEntity {
+
+    @Id
+    @Column(name = "file_id", nullable = false)
+    private String fileId;
+
+    @Column(name = "uploader_id", nullable = false)
+    private String uploaderId;
+
+    @Column(name = "channel_id", nullable = false)
+    private String channelId;
+
+    @Column(name = "filename", nullable = false)
+    private String filename;
+
+    @Column(name = "mime_type")
+    private String mimeType;
+
+    @Column(name = "file_size", nullable = false)
+    private long fileSize;
+
+    @Column(name = "key_id", nullable = false)
+    private String keyId;
+
+    // Empty for deduplicated files, whose chunks use derived keys instead
+    @Column(name = "nonce_prefix", nullable = false)
+    private String noncePrefix;
+
+    @Column(name = "dedup")
+    private Boolean dedup;
+
+    // Concatenated 32-byte chunk keys, sealed under keyId; deduplicated files only
+    @Column(name = "wrapped_chunk_keys", columnDefinition = "bytea")
+    private byte[] wrappedChunkKeys;
+
+    // The file key (keyId) sealed under the service master key, so files survive restarts
+    @Column(name = "wrapped_file_key", columnDefinition = "bytea")
+    private byte[] wrappedFileKey;
+
+    @Column(name = "chunk_size", nullable = false)
+    private int chunkSize;
+
+    // Loaded only by transfers, via SharedFileRepository.findWithChunksByFileId
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "shared_file_chunks", joinColumns = @JoinColumn(name = "file_id"))
+    @OrderColumn(name = "chunk_index")
+    @Column(name = "blob_id", nullable = false)
+    private List<String> chunkIds = new ArrayList<>();
+
+    // Never loaded for access checks: those are indexed lookups of a single (file_id, user_id) row
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "shared_file_members", joinColumns = @JoinColumn(name = "file_id"),
+        indexes = @Index(name = "idx_shared_file_members_user", columnList = "user_id, file_id"))
+    @Column(name = "user_id", nullable = false)
+    private Set<String> sharedWith = new HashSet<>();
+
+    @Column(name = "uploaded_at", nullable = false)
+    private LocalDateTime uploadedAt;
+
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted;
+
+    public SharedFileEntity() {
+    }
+
+    public SharedFileEntity(String fileId, String uploaderId, String channelId, String filename, String mimeType,
+                            long fileSize, String keyId, String noncePrefix, int chunkSize,
+                            List<String> chunkIds, LocalDateTime uploadedAt) {
+        this.fileId = fileId;
+        this.uploaderId = uploaderId;
+        this.channelId = channelId;
+        this.filename = filename;
+        this.mimeType = mimeType;
+        this.fileSize = fileSize;
+        this.keyId = keyId;
+        this.noncePrefix = noncePrefix;
+        this.chunkSize = chunkSize;
+        this.chunkIds = new ArrayList<>(chunkIds);
+        this.sharedWith.add(uploaderId); // Owner can always access
+        this.uploadedAt = uploadedAt;
+    }
+
+    public String getFileId() { return fileId; }
+    public String getUploaderId() { return uploaderId; }
+    public String getChannelId() { return channelId; }
+    public String getFilename() { return filename; }
+    public String getMimeType() { return mimeType; }
+    public long getFileSize() { return fileSize; }
+    public String getKeyId() { return keyId; }
+    public String getNoncePrefix() { return noncePrefix; }
+    public int getChunkSize() { return chunkSize; }
+    public List<String> getChunkIds() { return chunkIds; }
+    public Set<String> getSharedWith() { return sharedWith; }
+    public LocalDateTime getUploadedAt() { return uploadedAt; }
+    public boolean isDedup() { return Boolean.TRUE.equals(dedup); }
+    public byte[] getWrappedChunkKeys() { return wrappedChunkKeys; }
+    public void setWrappedChunkKeys(byte[] wrappedChunkKeys) {
+        this.wrappedChunkKeys = wrappedChunkKeys;
+        this.dedup = wrappedChunkKeys != null;
+    }
+    public byte[] getWrappedFileKey() { return wrappedFileKey; }
+    public void setWrappedFileKey(byte[] wrappedFileKey) { this.wrappedFileKey = wrappedFileKey; }
+    public boolean isDeleted() { return deleted; }
+    public void setDeleted(boolean deleted) { this.deleted = deleted; }
+}
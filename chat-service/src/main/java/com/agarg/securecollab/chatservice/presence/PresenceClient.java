@@ -0,0 +1,131 @@
+package com.agarg.securecollab.chatservice.presence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Presence Client
+ * Read-only view of the presence:{userId} keys that websocket-service's PresenceService writes
+ * (value = session id, TTL refreshed by heartbeats), so every chat-service replica agrees on who
+ * is online. Lookups are served from a bounded Caffeine cache; cache hits take no lock and make
+ * no Redis call. Entries are invalidated by keyspace notifications (enabled by websocket-service)
+ * and expire after near-cache.ttl as a fallback.
+ */
+@Component
+public class PresenceClient implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceClient.class);
+
+    // Must match PresenceService.PRESENCE_KEY_PREFIX in websocket-service
+    public static final String PRESENCE_KEY_PREFIX = "presence:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    // userId -> online
+    private final Cache<String, Boolean> cache;
+
+    public PresenceClient(StringRedisTemplate redisTemplate,
+                          RedisMessageListenerContainer listenerContainer,
+                          MeterRegistry meterRegistry,
+                          @Value("${securecollab.presence.near-cache.max-size:100000}") long maxSize,
+                          @Value("${securecollab.presence.near-cache.ttl:10s}") Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "chat.presence");
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new PatternTopic("__keyspace@*__:" + PRESENCE_KEY_PREFIX + "*"));
+    }
+
+    public boolean isOnline(String userId) {
+        if (userId == null) {
+            return false;
+        }
+        Boolean online = cache.getIfPresent(userId);
+        return online != null ? online : cache.get(userId, this::load);
+    }
+
+    /**
+     * Online state for many users; cache misses are loaded with one MGET
+     */
+    public Map<String, Boolean> isOnline(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return cache.getAll(userIds, this::loadAll);
+    }
+
+    /**
+     * Drop a cached entry, e.g. when this service learns of a connect or disconnect first-hand
+     */
+    public void invalidate(String userId) {
+        if (userId != null) {
+            cache.invalidate(userId);
+        }
+    }
+
+    public long getCachedUserCount() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        int idx = channel.indexOf(PRESENCE_KEY_PREFIX);
+        if (idx >= 0) {
+            cache.invalidate(channel.substring(idx + PRESENCE_KEY_PREFIX.length()));
+        }
+    }
+
+    private Boolean load(String userId) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(PRESENCE_KEY_PREFIX + userId));
+        } catch (Exception e) {
+            // Treat as offline so messages are queued rather than lost
+            logger.warn("Presence lookup failed for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    private Map<String, Boolean> loadAll(Set<? extends String> userIds) {
+        List<String> ordered = new ArrayList<>(userIds);
+        List<String> keys = new ArrayList<>(ordered.size());
+        for (String userId : ordered) {
+            keys.add(PRESENCE_KEY_PREFIX + userId);
+        }
+        Map<String, Boolean> online = new HashMap<>(ordered.size() * 2);
+        List<String> values;
+        try {
+            values = redisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception e) {
+            logger.warn("Presence lookup failed for {} users: {}", ordered.size(), e.getMessage());
+            values = null;
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            online.put(ordered.get(i), values != null && values.get(i) != null);
+        }
+        return online;
+    }
+}
@@ -0,0 +1,21 @@
+package com.agarg.securecollab.chatservice.repository;
+
+import com.agarg.securecollab.chatservice.entity.FileAccessLogEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface FileAccessLogRepository extends JpaRepository<FileAccessLogEntity, Long> {
+
+    // Most recent entries first, served by idx_file_access_log_file_time
+    List<FileAccessLogEntity> findByFileIdOrderByAccessTimeDescIdDesc(String fileId, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM FileAccessLogEntity a WHERE a.fileId = :fileId")
+    int deleteByFileId(@Param("fileId") String fileId);
+}
@@ -1,10 +1,15 @@
 package com.agarg.securecollab.chatservice.repository;
 
 import com.agarg.securecollab.chatservice.entity.OfflineMessageEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -12,4 +17,21 @@ public interface OfflineMessageRepository extends JpaRepository<OfflineMessageEn
     List<OfflineMessageEntity> findByRecipientIdOrderByCreatedAtAsc(String recipientId);
     List<OfflineMessageEntity> findByExpiresAtBefore(LocalDateTime time);
     void deleteByRecipientId(String recipientId);
+    long countByRecipientId(String recipientId);
+
+    // Keyset pagination on (created_at, id), served by idx_offline_recipient_created_id:
+    // first page, then pages strictly after the last row seen
+    List<OfflineMessageEntity> findByRecipientIdOrderByCreatedAtAscIdAsc(String recipientId, Limit limit);
+
+    @Query("SELECT o FROM OfflineMessageEntity o WHERE o.recipientId = :recipientId " +
+           "AND (o.createdAt > :afterCreatedAt OR (o.createdAt = :afterCreatedAt AND o.id > :afterId)) " +
+           "ORDER BY o.createdAt ASC, o.id ASC")
+    List<OfflineMessageEntity> findPageAfter(@Param("recipientId") String recipientId,
+                                             @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                             @Param("afterId") Long afterId,
+                                             Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM OfflineMessageEntity o WHERE o.recipientId = :recipientId AND o.id IN :ids")
+    int deleteByRecipientIdAndIdIn(@Param("recipientId") String recipientId, @Param("ids") Collection<Long> ids);
 }
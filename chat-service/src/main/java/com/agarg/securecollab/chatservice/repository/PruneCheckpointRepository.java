@@ -0,0 +1,9 @@
+package com.agarg.securecollab.chatservice.repository;
+
+import com.agarg.securecollab.chatservice.entity.PruneCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PruneCheckpointRepository extends JpaRepository<PruneCheckpointEntity, String> {
+}
@@ -0,0 +1,47 @@
+package com.agarg.securecollab.chatservice.repository;
+
+import com.agarg.securecollab.chatservice.entity.SharedFileEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SharedFileRepository extends JpaRepository<SharedFileEntity, String> {
+
+    @EntityGraph(attributePaths = "chunkIds")
+    Optional<SharedFileEntity> findWithChunksByFileId(String fileId);
+
+    // Single-row probe of the (file_id, user_id) key of shared_file_members
+    @Query("SELECT COUNT(f) > 0 FROM SharedFileEntity f JOIN f.sharedWith m " +
+           "WHERE f.fileId = :fileId AND m = :userId")
+    boolean isMember(@Param("fileId") String fileId, @Param("userId") String userId);
+
+    @Query("SELECT m FROM SharedFileEntity f JOIN f.sharedWith m WHERE f.fileId = :fileId ORDER BY m")
+    List<String> findMembers(@Param("fileId") String fileId);
+
+    // Keyset pagination on (uploaded_at, file_id) descending, served by idx_shared_files_channel_uploaded
+    // and the member key: first page, then pages strictly before the last row seen
+    @Query("SELECT f FROM SharedFileEntity f JOIN f.sharedWith m " +
+           "WHERE f.channelId = :channelId AND m = :userId AND f.deleted = false " +
+           "ORDER BY f.uploadedAt DESC, f.fileId DESC")
+    List<SharedFileEntity> findChannelPage(@Param("channelId") String channelId,
+                                           @Param("userId") String userId,
+                                           Limit limit);
+
+    @Query("SELECT f FROM SharedFileEntity f JOIN f.sharedWith m " +
+           "WHERE f.channelId = :channelId AND m = :userId AND f.deleted = false " +
+           "AND (f.uploadedAt < :beforeUploadedAt OR (f.uploadedAt = :beforeUploadedAt AND f.fileId < :beforeFileId)) " +
+           "ORDER BY f.uploadedAt DESC, f.fileId DESC")
+    List<SharedFileEntity> findChannelPageBefore(@Param("channelId") String channelId,
+                                                 @Param("userId") String userId,
+                                                 @Param("beforeUploadedAt") LocalDateTime beforeUploadedAt,
+                                                 @Param("beforeFileId") String beforeFileId,
+                                                 Limit limit);
+}
@@ -0,0 +1,62 @@
+package com.agarg.securecollab.chatservice.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Internal API Authentication Filter
+ * Authenticates calls to chat-service's internal endpoints either as a trusted service, by the
+ * shared X-Service-Token header, or as an end user, by a Bearer JWT from {@link JwtTokenService}.
+ * Requests with neither stay anonymous and are rejected by the filter chain's rules.
+ */
+public class InternalApiAuthenticationFilter extends OncePerRequestFilter {
+
+    public static final String SERVICE_TOKEN_HEADER = "X-Service-Token";
+    public static final String ROLE_SERVICE = "ROLE_INTERNAL_SERVICE";
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final byte[] serviceToken;
+    private final JwtTokenService jwtTokenService;
+
+    /**
+     * @param serviceToken shared secret; empty disables service authentication
+     */
+    public InternalApiAuthenticationFilter(String serviceToken, JwtTokenService jwtTokenService) {
+        this.serviceToken = serviceToken.getBytes(StandardCharsets.UTF_8);
+        this.jwtTokenService = jwtTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String presented = request.getHeader(SERVICE_TOKEN_HEADER);
+        String authorization = request.getHeader("Authorization");
+        if (presented != null) {
+            if (serviceToken.length > 0
+                    && MessageDigest.isEqual(serviceToken, presented.getBytes(StandardCharsets.UTF_8))) {
+                authenticate("internal-service", ROLE_SERVICE);
+            }
+        } else if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+            String userId = jwtTokenService.extractUserId(authorization.substring(BEARER_PREFIX.length()));
+            if (userId != null) {
+                authenticate(userId, "ROLE_USER");
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static void authenticate(String principal, String role) {
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken(principal, null, AuthorityUtils.createAuthorityList(role)));
+    }
+}
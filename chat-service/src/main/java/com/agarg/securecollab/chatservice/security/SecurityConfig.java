@@ -0,0 +1,85 @@
+package com.agarg.securecollab.chatservice.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Security Configuration
+ * The offline queue endpoints used by websocket-service get their own stateless chain: callers
+ * authenticate with the shared service token or a user JWT, and a user may only read or
+ * acknowledge their own queue. Everything else keeps Spring Boot's default rules.
+ */
+@Configuration
+public class SecurityConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
+
+    private static final String PENDING_MESSAGES = "/api/chat/pending-messages/**";
+
+    private static final AuthenticationTrustResolver TRUST_RESOLVER = new AuthenticationTrustResolverImpl();
+
+    @Bean
+    @Order(1)
+    public SecurityFilterChain internalApiFilterChain(HttpSecurity http,
+                                                      JwtTokenService jwtTokenService,
+                                                      @Value("${securecollab.internal.service-token:}") String serviceToken) throws Exception {
+        if (serviceToken.isEmpty()) {
+            logger.warn("securecollab.internal.service-token is not set; service calls to {} will be rejected",
+                PENDING_MESSAGES);
+        }
+        http.securityMatcher(PENDING_MESSAGES)
+            // Token-authenticated and stateless, so there is no session for CSRF to ride on
+            .csrf(csrf -> csrf.disable())
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .addFilterBefore(new InternalApiAuthenticationFilter(serviceToken, jwtTokenService),
+                UsernamePasswordAuthenticationFilter.class)
+            .exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
+            .authorizeHttpRequests(auth -> auth
+                .requestMatchers("/api/chat/pending-messages/{userId}", "/api/chat/pending-messages/{userId}/*")
+                    .access(serviceOrQueueOwner())
+                .anyRequest().denyAll());
+        return http.build();
+    }
+
+    /**
+     * Spring Boot's default rules, which would otherwise back off once a chain is defined
+     */
+    @Bean
+    @Order(2)
+    public SecurityFilterChain defaultFilterChain(HttpSecurity http) throws Exception {
+        http.authorizeHttpRequests(auth -> auth.anyRequest().authenticated())
+            .formLogin(Customizer.withDefaults())
+            .httpBasic(Customizer.withDefaults());
+        return http.build();
+    }
+
+    private static AuthorizationManager<RequestAuthorizationContext> serviceOrQueueOwner() {
+        return (Supplier<Authentication> authentication, RequestAuthorizationContext context) -> {
+            Authentication auth = authentication.get();
+            if (auth == null || !auth.isAuthenticated() || TRUST_RESOLVER.isAnonymous(auth)) {
+                return new AuthorizationDecision(false);
+            }
+            boolean service = auth.getAuthorities().stream()
+                .anyMatch(a -> InternalApiAuthenticationFilter.ROLE_SERVICE.equals(a.getAuthority()));
+            return new AuthorizationDecision(service || auth.getName().equals(context.getVariables().get("userId")));
+        };
+    }
+}
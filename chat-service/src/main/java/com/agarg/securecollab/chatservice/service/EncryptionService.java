@@ -6,14 +6,21 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * End-to-End Encryption (E2E) Service
- * Provides AES-256-GCM encryption for message content
+ * Provides AES-256-GCM encryption for message content.
+ * Cipher instances are cached per thread and re-initialised with a fresh IV per call; keys live
+ * in a concurrent store. The ByteBuffer overloads use the wire layout IV || ciphertext || tag
+ * and skip Base64 entirely.
  */
 @Service
 public class EncryptionService {
@@ -25,9 +32,23 @@ public class EncryptionService {
     private static final int KEY_SIZE = 256;
     private static final int GCM_IV_LENGTH = 12; // 96 bits
     private static final int GCM_TAG_LENGTH = 128; // 128 bits
+    public static final int GCM_NONCE_LENGTH = GCM_IV_LENGTH;
+    public static final int GCM_TAG_BYTES = GCM_TAG_LENGTH / 8;
+    public static final int GCM_OVERHEAD = GCM_IV_LENGTH + GCM_TAG_BYTES;
+    // Convergent chunk keys are single-content, so a constant nonce is safe
+    private static final byte[] CONVERGENT_NONCE = new byte[GCM_IV_LENGTH];
+
+    // Cipher.getInstance walks the provider list; one instance per thread is reused instead
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(CIPHER_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM not available", e);
+        }
+    });
     
     // In-memory key store (in production, use proper KMS like AWS KMS, HashiCorp Vault, etc.)
-    private final Map<String, SecretKey> keyStore = new HashMap<>();
+    private final Map<String, SecretKey> keyStore = new ConcurrentHashMap<>();
     private final SecureRandom secureRandom = new SecureRandom();
     
     /**
@@ -36,17 +57,9 @@ public class EncryptionService {
      * @return the generated SecretKey
      */
     public SecretKey generateKey(String keyId) {
-        try {
-            KeyGenerator keyGen = KeyGenerator.getInstance(ALGORITHM);
-            keyGen.init(KEY_SIZE, secureRandom);
-            SecretKey key = keyGen.generateKey();
-            keyStore.put(keyId, key);
-            logger.info("Generated new encryption key: {}", keyId);
-            return key;
-        } catch (Exception e) {
-            logger.error("Error generating encryption key", e);
-            throw new RuntimeException("Failed to generate encryption key", e);
-        }
+        SecretKey key = newKey(keyId);
+        keyStore.put(keyId, key);
+        return key;
     }
     
     /**
@@ -57,16 +70,10 @@ public class EncryptionService {
      */
     public EncryptedPayload encrypt(String plaintext, String keyId) {
         try {
-            SecretKey key = keyStore.computeIfAbsent(keyId, this::generateKey);
+            byte[] iv = newIv();
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, keyFor(keyId), iv);
             
-            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            secureRandom.nextBytes(iv);
-            
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, key, gcmSpec);
-            
-            byte[] ciphertext = cipher.doFinal(plaintext.getBytes());
+            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
             
             // Encode IV and ciphertext to Base64 for transmission
             String encryptedContent = Base64.getEncoder().encodeToString(ciphertext);
@@ -88,29 +95,131 @@ public class EncryptionService {
      */
     public String decrypt(EncryptedPayload payload) {
         try {
-            SecretKey key = keyStore.get(payload.getKeyId());
-            if (key == null) {
-                throw new IllegalArgumentException("Key not found: " + payload.getKeyId());
-            }
+            SecretKey key = existingKey(payload.getKeyId());
             
             byte[] iv = Base64.getDecoder().decode(payload.getIv());
             byte[] ciphertext = Base64.getDecoder().decode(payload.getCiphertext());
             
-            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, key, gcmSpec);
-            
-            byte[] plaintext = cipher.doFinal(ciphertext);
+            byte[] plaintext = initCipher(Cipher.DECRYPT_MODE, key, iv).doFinal(ciphertext);
             
             logger.debug("Decrypted message with key: {}", payload.getKeyId());
             
-            return new String(plaintext);
+            return new String(plaintext, StandardCharsets.UTF_8);
         } catch (Exception e) {
             logger.error("Error decrypting message", e);
             throw new RuntimeException("Failed to decrypt message", e);
         }
     }
     
+    /**
+     * Encrypt the remaining bytes of plaintext into out as IV || ciphertext || tag.
+     * out needs {@link #encryptedSize(int)} bytes remaining; both buffers may be direct.
+     * @return number of bytes written to out
+     */
+    public int encrypt(ByteBuffer plaintext, ByteBuffer out, String keyId) {
+        try {
+            byte[] iv = newIv();
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, keyFor(keyId), iv);
+            out.put(iv);
+            return GCM_IV_LENGTH + cipher.doFinal(plaintext, out);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error encrypting buffer", e);
+            throw new RuntimeException("Failed to encrypt message", e);
+        }
+    }
+
+    /**
+     * Decrypt a buffer laid out as IV || ciphertext || tag into out.
+     * out needs {@link #decryptedSize(int)} bytes remaining.
+     * @return number of plaintext bytes written to out
+     */
+    public int decrypt(ByteBuffer encrypted, ByteBuffer out, String keyId) {
+        if (encrypted.remaining() < GCM_OVERHEAD) {
+            throw new IllegalArgumentException("Encrypted buffer too short: " + encrypted.remaining());
+        }
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            encrypted.get(iv);
+            return initCipher(Cipher.DECRYPT_MODE, existingKey(keyId), iv).doFinal(encrypted, out);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error decrypting buffer", e);
+            throw new RuntimeException("Failed to decrypt message", e);
+        }
+    }
+
+    /**
+     * Seal one chunk of a chunked stream with a caller-derived nonce; out receives ciphertext || tag.
+     * The nonce must never repeat for a key, see {@link StreamingFileCipher}.
+     * @return number of bytes written to out
+     */
+    public int sealChunk(ByteBuffer plaintext, ByteBuffer out, String keyId, byte[] nonce, byte[] aad) {
+        try {
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, existingKey(keyId), nonce);
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+            return cipher.doFinal(plaintext, out);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error sealing chunk", e);
+            throw new RuntimeException("Failed to encrypt chunk", e);
+        }
+    }
+
+    /**
+     * Deterministically seal a chunk under a key derived from its own content (convergent
+     * encryption), with a fixed nonce: equal chunks give equal ciphertext, distinct chunks never
+     * share a key. Uses a fresh Cipher because the JDK refuses to re-init one with the last
+     * encryption key and IV, which is exactly what sealing two equal chunks does.
+     * @return number of bytes written to out
+     */
+    public int sealConvergentChunk(ByteBuffer plaintext, ByteBuffer out, SecretKey chunkKey) {
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, chunkKey, new GCMParameterSpec(GCM_TAG_LENGTH, CONVERGENT_NONCE));
+            return cipher.doFinal(plaintext, out);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error sealing chunk", e);
+            throw new RuntimeException("Failed to encrypt chunk", e);
+        }
+    }
+
+    /**
+     * Open one chunk sealed by {@link #sealChunk}; fails if the chunk, nonce or AAD was altered
+     * @return number of plaintext bytes written to out
+     */
+    public int openChunk(ByteBuffer sealed, ByteBuffer out, String keyId, byte[] nonce, byte[] aad) {
+        try {
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, existingKey(keyId), nonce);
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+            return cipher.doFinal(sealed, out);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error opening chunk", e);
+            throw new RuntimeException("Failed to decrypt chunk", e);
+        }
+    }
+
+    /**
+     * Open a chunk sealed by {@link #sealConvergentChunk}
+     */
+    public int openConvergentChunk(ByteBuffer sealed, ByteBuffer out, SecretKey chunkKey) {
+        try {
+            return initCipher(Cipher.DECRYPT_MODE, chunkKey, CONVERGENT_NONCE).doFinal(sealed, out);
+        } catch (GeneralSecurityException e) {
+            logger.error("Error opening chunk", e);
+            throw new RuntimeException("Failed to decrypt chunk", e);
+        }
+    }
+
+    public static int encryptedSize(int plaintextLength) {
+        return plaintextLength + GCM_OVERHEAD;
+    }
+
+    public static int decryptedSize(int encryptedLength) {
+        return Math.max(0, encryptedLength - GCM_OVERHEAD);
+    }
+
     /**
      * Import a key from Base64 encoded format
      * @param keyId the key identifier
@@ -128,6 +237,52 @@ public class EncryptionService {
         }
     }
     
+    /**
+     * Seal a stored key under a wrapping key, as IV || ciphertext || tag with the key id as AAD,
+     * so it can be persisted and restored by {@link #unwrapKey} after a restart
+     */
+    public byte[] wrapKey(String keyId, SecretKey wrappingKey) {
+        byte[] encoded = existingKey(keyId).getEncoded();
+        ByteBuffer out = ByteBuffer.allocate(encryptedSize(encoded.length));
+        try {
+            byte[] iv = newIv();
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, wrappingKey, iv);
+            cipher.updateAAD(keyId.getBytes(StandardCharsets.UTF_8));
+            out.put(iv);
+            cipher.doFinal(ByteBuffer.wrap(encoded), out);
+            return out.array();
+        } catch (GeneralSecurityException e) {
+            logger.error("Error wrapping key", e);
+            throw new RuntimeException("Failed to wrap key", e);
+        }
+    }
+
+    /**
+     * Open a key sealed by {@link #wrapKey} and put it in the store unless already present;
+     * fails if the wrapped bytes or the key id were altered
+     */
+    public void unwrapKey(String keyId, byte[] wrapped, SecretKey wrappingKey) {
+        if (keyStore.containsKey(keyId)) {
+            return;
+        }
+        if (wrapped.length < GCM_OVERHEAD) {
+            throw new IllegalArgumentException("Wrapped key too short: " + wrapped.length);
+        }
+        try {
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, wrappingKey, Arrays.copyOf(wrapped, GCM_IV_LENGTH));
+            cipher.updateAAD(keyId.getBytes(StandardCharsets.UTF_8));
+            byte[] encoded = cipher.doFinal(wrapped, GCM_IV_LENGTH, wrapped.length - GCM_IV_LENGTH);
+            keyStore.putIfAbsent(keyId, new SecretKeySpec(encoded, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            logger.error("Error unwrapping key", e);
+            throw new RuntimeException("Failed to unwrap key", e);
+        }
+    }
+
+    public boolean hasKey(String keyId) {
+        return keyStore.containsKey(keyId);
+    }
+
     /**
      * Export a key in Base64 encoded format
      * @param keyId the key identifier
@@ -141,6 +296,44 @@ public class EncryptionService {
         return Base64.getEncoder().encodeToString(key.getEncoded());
     }
     
+    private SecretKey keyFor(String keyId) {
+        SecretKey key = keyStore.get(keyId);
+        return key != null ? key : keyStore.computeIfAbsent(keyId, this::newKey);
+    }
+
+    private SecretKey existingKey(String keyId) {
+        SecretKey key = keyStore.get(keyId);
+        if (key == null) {
+            throw new IllegalArgumentException("Key not found: " + keyId);
+        }
+        return key;
+    }
+
+    private SecretKey newKey(String keyId) {
+        try {
+            KeyGenerator keyGen = KeyGenerator.getInstance(ALGORITHM);
+            keyGen.init(KEY_SIZE, secureRandom);
+            SecretKey key = keyGen.generateKey();
+            logger.info("Generated new encryption key: {}", keyId);
+            return key;
+        } catch (Exception e) {
+            logger.error("Error generating encryption key", e);
+            throw new RuntimeException("Failed to generate encryption key", e);
+        }
+    }
+
+    private byte[] newIv() {
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        return iv;
+    }
+
+    private static Cipher initCipher(int mode, SecretKey key, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = CIPHERS.get();
+        cipher.init(mode, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        return cipher;
+    }
+    
     /**
      * Encrypted payload DTO
      */
@@ -1,6 +1,26 @@
 package com.agarg.securecollab.chatservice.service;
 
+import com.agarg.securecollab.chatservice.entity.ChannelEntity;
+import com.agarg.securecollab.chatservice.entity.FileAccessLogEntity;
+import com.agarg.securecollab.chatservice.entity.SharedFileEntity;
+import com.agarg.securecollab.chatservice.repository.ChannelRepository;
+import com.agarg.securecollab.chatservice.repository.FileAccessLogRepository;
+import com.agarg.securecollab.chatservice.repository.SharedFileRepository;
+import com.agarg.securecollab.chatservice.storage.BlobReferenceTracker;
+import com.agarg.securecollab.chatservice.storage.BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.io.*;
@@ -9,25 +29,111 @@ import org.slf4j.LoggerFactory;
 
 /**
  * File Sharing Service
- * Handles encrypted file uploads, downloads, and sharing
+ * Handles encrypted file uploads, downloads, and sharing.
+ * Uploads and downloads stream through {@link StreamingFileCipher}, so a transfer holds a few
+ * chunks in heap rather than the whole file; downloads may request a byte range.
+ * Sealed chunks are kept in a content-addressed {@link BlobStore}; only metadata (chunk ids,
+ * members) is persisted in shared_files, together with the file key sealed under the configured
+ * master key, which downloads unwrap into {@link EncryptionService} on first use after a restart.
+ * Channels can opt in to deduplication: their uploads are sealed convergently, so identical
+ * chunks map to one reference-counted blob however many channels share them, and each file
+ * record keeps its own wrapped copy of the chunk keys.
+ * Listing and access checks are index lookups (channel/upload-time and member keys) rather than
+ * scans, and downloads append to a time-rolled access log, so hot files keep flat metadata.
  */
 @Service
 public class FileSharingService {
     
     private static final Logger logger = LoggerFactory.getLogger(FileSharingService.class);
     
-    private final Map<String, SharedFile> files = new HashMap<>();
     private final EncryptionService encryptionService;
+    private final StreamingFileCipher fileCipher;
+    private final BlobStore blobStore;
+    private final SharedFileRepository fileRepository;
+    private final FileAccessLogRepository accessLogRepository;
+    private final ChannelRepository channelRepository;
+    private final BlobReferenceTracker referenceTracker;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean dedupEnabled;
+    private final byte[] dedupSecret;
+    private final SecretKey masterKey;
     
     // Configuration
     private static final long MAX_FILE_SIZE = 100 * 1024 * 1024; // 100MB
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final String ADD_MEMBER_SQL =
+        "INSERT INTO shared_file_members (file_id, user_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
     private static final Set<String> ALLOWED_TYPES = Set.of(
         "pdf", "doc", "docx", "xls", "xlsx", "txt", 
         "jpg", "jpeg", "png", "gif", "zip", "rar"
     );
     
-    public FileSharingService(EncryptionService encryptionService) {
+    public FileSharingService(EncryptionService encryptionService,
+                              StreamingFileCipher fileCipher,
+                              BlobStore blobStore,
+                              SharedFileRepository fileRepository,
+                              FileAccessLogRepository accessLogRepository,
+                              ChannelRepository channelRepository,
+                              BlobReferenceTracker referenceTracker,
+                              PlatformTransactionManager transactionManager,
+                              JdbcTemplate jdbcTemplate,
+                              @Value("${securecollab.file-sharing.dedup.enabled:true}") boolean dedupEnabled,
+                              @Value("${securecollab.file-sharing.dedup.secret:}") String dedupSecret,
+                              @Value("${securecollab.file-sharing.master-key:}") String masterKey) {
         this.encryptionService = encryptionService;
+        this.fileCipher = fileCipher;
+        this.blobStore = blobStore;
+        this.fileRepository = fileRepository;
+        this.accessLogRepository = accessLogRepository;
+        this.channelRepository = channelRepository;
+        this.referenceTracker = referenceTracker;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = jdbcTemplate;
+        this.dedupEnabled = dedupEnabled;
+        this.dedupSecret = dedupEnabled ? dedupSecret(dedupSecret) : null;
+        this.masterKey = masterKey(masterKey);
+    }
+
+    /**
+     * A per-process random secret would never match another replica's or a restarted process's
+     * chunk keys, so deduplication would silently stop working; refuse to start instead
+     */
+    private static byte[] dedupSecret(String encoded) {
+        if (encoded.isEmpty()) {
+            throw new IllegalStateException("securecollab.file-sharing.dedup.secret must be set when "
+                + "securecollab.file-sharing.dedup.enabled is true (Base64, shared by all replicas)");
+        }
+        byte[] secret;
+        try {
+            secret = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("securecollab.file-sharing.dedup.secret is not valid Base64", e);
+        }
+        if (secret.length < 32) {
+            throw new IllegalStateException("securecollab.file-sharing.dedup.secret must decode to at least 32 bytes");
+        }
+        return secret;
+    }
+
+    /**
+     * Without a stable master key the file keys could not be restored, and every stored file
+     * would become unreadable on restart
+     */
+    private static SecretKey masterKey(String encoded) {
+        if (encoded.isEmpty()) {
+            throw new IllegalStateException("securecollab.file-sharing.master-key must be set (Base64 AES-256 key)");
+        }
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("securecollab.file-sharing.master-key is not valid Base64", e);
+        }
+        if (key.length != 32) {
+            throw new IllegalStateException("securecollab.file-sharing.master-key must decode to 32 bytes, got " + key.length);
+        }
+        return new SecretKeySpec(key, "AES");
     }
     
     /**
@@ -35,66 +141,219 @@ public class FileSharingService {
      */
     public SharedFile uploadFile(String uploaderId, String channelId, String filename,
                                  byte[] fileContent, String mimeType) {
+        return uploadFile(uploaderId, channelId, filename, new ByteArrayInputStream(fileContent), mimeType);
+    }
+
+    /**
+     * Upload and share a file, encrypting it chunk by chunk as it is read
+     */
+    public SharedFile uploadFile(String uploaderId, String channelId, String filename,
+                                 InputStream content, String mimeType) {
+        return uploadFile(uploaderId, channelId, filename, Channels.newChannel(content), mimeType);
+    }
+
+    public SharedFile uploadFile(String uploaderId, String channelId, String filename,
+                                 ReadableByteChannel content, String mimeType) {
         
-        // Validate file
-        validateFile(filename, fileContent);
+        // Validate file type; the size limit is enforced while streaming
+        validateFile(filename);
         
-        // Encrypt file content
+        // Fresh key per file; it seals the chunks, or wraps the chunk keys of a deduplicated file
         String fileKeyId = "file_" + UUID.randomUUID().toString();
-        String plaintext = Base64.getEncoder().encodeToString(fileContent);
-        EncryptionService.EncryptedPayload encrypted = encryptionService.encrypt(plaintext, fileKeyId);
+        encryptionService.generateKey(fileKeyId);
+        byte[] noncePrefix = fileCipher.newNoncePrefix();
+        int chunkSize = fileCipher.getChunkSize();
+        boolean dedup = isDedupChannel(channelId);
         
-        // Create file record
-        SharedFile file = new SharedFile(uploaderId, channelId, filename, 
-                                        encrypted.getCiphertext(), 
-                                        encrypted.getIv(), fileKeyId,
-                                        mimeType, fileContent.length);
-        
-        files.put(file.getFileId(), file);
-        logger.info("File uploaded: {} by user: {}", filename, uploaderId);
+        // Sealed chunks go straight to the blob store; only their ids are kept
+        List<String> chunkIds = new ArrayList<>();
+        ByteArrayOutputStream chunkKeys = new ByteArrayOutputStream();
+        SharedFileEntity entity;
+        try {
+            long size = dedup
+                ? fileCipher.encryptConvergent(content, dedupSecret, MAX_FILE_SIZE, (index, sealed, chunkKey) -> {
+                    chunkIds.add(storeChunk(sealed));
+                    chunkKeys.write(chunkKey);
+                })
+                : fileCipher.encrypt(content, fileKeyId, noncePrefix, MAX_FILE_SIZE,
+                    (index, sealed) -> chunkIds.add(storeChunk(sealed)));
+            
+            // Create file record
+            entity = new SharedFileEntity(
+                UUID.randomUUID().toString(), uploaderId, channelId, filename, mimeType, size, fileKeyId,
+                dedup ? "" : Base64.getEncoder().encodeToString(noncePrefix), chunkSize, chunkIds, LocalDateTime.now());
+            if (dedup) {
+                entity.setWrappedChunkKeys(wrapChunkKeys(chunkKeys.toByteArray(), fileKeyId));
+            }
+            entity.setWrappedFileKey(encryptionService.wrapKey(fileKeyId, masterKey));
+            entity = fileRepository.save(entity);
+        } catch (IOException | RuntimeException e) {
+            referenceTracker.release(chunkIds);
+            if (e instanceof IOException io) {
+                logger.error("Error storing upload: {}", filename, e);
+                throw new UncheckedIOException("Failed to upload file", io);
+            }
+            throw (RuntimeException) e;
+        }
+        logger.info("File uploaded: {} ({} bytes, {} chunks, dedup={}) by user: {}",
+            filename, entity.getFileSize(), chunkIds.size(), dedup, uploaderId);
         
-        return file;
+        return new SharedFile(entity);
+    }
+
+    private String storeChunk(ByteBuffer sealed) throws IOException {
+        String blobId = blobStore.address(sealed);
+        referenceTracker.acquireAndStore(blobId, sealed);
+        return blobId;
+    }
+
+    private byte[] wrapChunkKeys(byte[] chunkKeys, String fileKeyId) {
+        ByteBuffer wrapped = ByteBuffer.allocate(EncryptionService.encryptedSize(chunkKeys.length));
+        encryptionService.encrypt(ByteBuffer.wrap(chunkKeys), wrapped, fileKeyId);
+        return wrapped.array();
+    }
+
+    private byte[] unwrapChunkKeys(SharedFileEntity file) {
+        byte[] wrapped = file.getWrappedChunkKeys();
+        ByteBuffer chunkKeys = ByteBuffer.allocate(EncryptionService.decryptedSize(wrapped.length));
+        encryptionService.decrypt(ByteBuffer.wrap(wrapped), chunkKeys, file.getKeyId());
+        return chunkKeys.array();
+    }
+
+    private boolean isDedupChannel(String channelId) {
+        return dedupEnabled && channelRepository.findById(channelId).map(ChannelEntity::isDedupFiles).orElse(false);
+    }
+
+    /**
+     * Opt a channel in or out of deduplicated attachment storage; applies to later uploads
+     */
+    @Transactional
+    public void setChannelDeduplication(String channelId, String userId, boolean enabled) {
+        ChannelEntity channel = channelRepository.findById(channelId)
+            .orElseThrow(() -> new IllegalArgumentException("Channel not found: " + channelId));
+        if (!userId.equals(channel.getOwnerId())) {
+            throw new SecurityException("Only the channel owner can change file deduplication");
+        }
+        channel.setDedupFiles(enabled);
+        logger.info("File deduplication {} for channel {}", enabled ? "enabled" : "disabled", channelId);
+    }
+
+    /**
+     * Physical vs. logical bytes across all stored files
+     */
+    public BlobReferenceTracker.StorageStats getStorageStats() {
+        return referenceTracker.getStorageStats();
     }
     
     /**
      * Download a file
      */
     public byte[] downloadFile(String fileId, String userId) {
-        SharedFile file = files.get(fileId);
+        SharedFileEntity file = requireAccess(fileId, userId);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.getFileSize());
+        download(file, userId, 0, file.getFileSize(), Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    /**
+     * Stream a whole file to the output
+     */
+    public void downloadFile(String fileId, String userId, OutputStream out) {
+        SharedFileEntity file = requireAccess(fileId, userId);
+        download(file, userId, 0, file.getFileSize(), Channels.newChannel(out));
+    }
+
+    /**
+     * Stream plaintext bytes [offset, offset + length) of a file; only the chunks that
+     * overlap the range are read and decrypted
+     */
+    public void downloadRange(String fileId, String userId, long offset, long length, WritableByteChannel out) {
+        download(requireAccess(fileId, userId), userId, offset, length, out);
+    }
+
+    /**
+     * Stream the sealed chunks of a file unchanged, for clients that decrypt on their side.
+     * Bytes go from the blob store to the channel via transferTo, without passing through the heap.
+     */
+    public void downloadEncrypted(String fileId, String userId, WritableByteChannel out) {
+        SharedFileEntity file = requireAccess(fileId, userId);
+        try {
+            for (String chunkId : file.getChunkIds()) {
+                blobStore.transferTo(chunkId, out);
+            }
+            recordAccess(file, userId);
+        } catch (IOException e) {
+            logger.error("Error downloading file: {}", fileId, e);
+            throw new UncheckedIOException("Failed to download file", e);
+        }
+    }
+
+    private void download(SharedFileEntity file, String userId, long offset, long length, WritableByteChannel out) {
+        loadFileKey(file);
+        try {
+            List<String> chunkIds = file.getChunkIds();
+            StreamingFileCipher.ChunkSource source = index -> blobStore.read(chunkIds.get(index));
+            if (file.isDedup()) {
+                fileCipher.decryptConvergent(source, unwrapChunkKeys(file), file.getChunkSize(),
+                    file.getFileSize(), offset, length, out);
+            } else {
+                fileCipher.decrypt(source, file.getKeyId(), Base64.getDecoder().decode(file.getNoncePrefix()),
+                    file.getChunkSize(), file.getFileSize(), offset, length, out);
+            }
+            recordAccess(file, userId);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error downloading file: {}", file.getFileId(), e);
+            throw new RuntimeException("Failed to download file", e);
+        }
+    }
+
+    /**
+     * Restore the file's key from its wrapped copy if this process has not seen it yet
+     */
+    private void loadFileKey(SharedFileEntity file) {
+        if (encryptionService.hasKey(file.getKeyId())) {
+            return;
+        }
+        if (file.getWrappedFileKey() == null) {
+            // Uploaded before file keys were persisted; the key died with that process
+            throw new IllegalStateException("Key for file " + file.getFileId() + " is not available");
+        }
+        encryptionService.unwrapKey(file.getKeyId(), file.getWrappedFileKey(), masterKey);
+    }
+
+    private void recordAccess(SharedFileEntity file, String userId) {
+        accessLogRepository.save(new FileAccessLogEntity(file.getFileId(), userId, LocalDateTime.now()));
+        logger.info("File downloaded: {} by user: {}", file.getFilename(), userId);
+    }
+
+    /**
+     * Load a file with its chunk list for a transfer, after an indexed membership check
+     */
+    private SharedFileEntity requireAccess(String fileId, String userId) {
+        SharedFileEntity file = fileRepository.findWithChunksByFileId(fileId).orElse(null);
         
-        if (file == null) {
+        if (file == null || file.isDeleted()) {
             throw new IllegalArgumentException("File not found: " + fileId);
         }
         
         // Check access
-        if (!file.canAccess(userId)) {
+        if (!fileRepository.isMember(fileId, userId)) {
             throw new SecurityException("User not authorized to access file: " + fileId);
         }
-        
-        try {
-            // Decrypt file content
-            EncryptionService.EncryptedPayload payload = new EncryptionService.EncryptedPayload(
-                file.getIv(), file.getEncryptedContent(), file.getKeyId()
-            );
-            String decrypted = encryptionService.decrypt(payload);
-            
-            file.addAccessLog(userId);
-            logger.info("File downloaded: {} by user: {}", file.getFilename(), userId);
-            
-            return Base64.getDecoder().decode(decrypted);
-        } catch (Exception e) {
-            logger.error("Error downloading file: {}", fileId, e);
-            throw new RuntimeException("Failed to download file", e);
-        }
+        return file;
     }
     
     /**
-     * Share a file with additional users
+     * Share a file with additional users; members are inserted directly, without loading
+     * the existing member set
      */
+    @Transactional
     public void shareFile(String fileId, List<String> userIds, String shareBy) {
-        SharedFile file = files.get(fileId);
+        SharedFileEntity file = fileRepository.findById(fileId).orElse(null);
         
-        if (file == null) {
+        if (file == null || file.isDeleted()) {
             throw new IllegalArgumentException("File not found: " + fileId);
         }
         
@@ -102,9 +361,8 @@ public class FileSharingService {
             throw new SecurityException("Only file owner can share the file");
         }
         
-        for (String userId : userIds) {
-            file.addSharedWith(userId);
-        }
+        jdbcTemplate.batchUpdate(ADD_MEMBER_SQL, userIds.stream().distinct()
+            .map(userId -> new Object[] {fileId, userId}).toList());
         
         logger.info("File shared: {} with {} users", fileId, userIds.size());
     }
@@ -113,20 +371,45 @@ public class FileSharingService {
      * Get file info
      */
     public SharedFile getFileInfo(String fileId, String userId) {
-        SharedFile file = files.get(fileId);
+        SharedFileEntity file = fileRepository.findById(fileId).orElse(null);
         
-        if (file == null || !file.canAccess(userId)) {
+        if (file == null || file.isDeleted() || !fileRepository.isMember(fileId, userId)) {
             return null;
         }
         
-        return file;
+        return new SharedFile(file);
+    }
+
+    /**
+     * Users a file is shared with, owner included; visible to members only
+     */
+    public List<String> getFileMembers(String fileId, String userId) {
+        if (!fileRepository.isMember(fileId, userId)) {
+            throw new SecurityException("User not authorized to access file: " + fileId);
+        }
+        return fileRepository.findMembers(fileId);
+    }
+
+    /**
+     * Most recent downloads of a file, newest first; owner only. Older entries roll off
+     * after the access-log retention period.
+     */
+    public List<SharedFile.AccessLog> getAccessLogs(String fileId, String userId, int limit) {
+        SharedFileEntity file = fileRepository.findById(fileId).orElse(null);
+        if (file == null || !file.getUploaderId().equals(userId)) {
+            throw new SecurityException("Only file owner can view access logs");
+        }
+        return accessLogRepository.findByFileIdOrderByAccessTimeDescIdDesc(fileId, Limit.of(pageSize(limit))).stream()
+            .map(log -> new SharedFile.AccessLog(log.getUserId(), log.getAccessTime()))
+            .toList();
     }
     
     /**
-     * Delete a file
+     * Delete a file; its chunk references are released with the metadata and the blobs
+     * themselves are reclaimed by the blob garbage collector once nothing references them
      */
     public void deleteFile(String fileId, String userId) {
-        SharedFile file = files.get(fileId);
+        SharedFileEntity file = fileRepository.findWithChunksByFileId(fileId).orElse(null);
         
         if (file == null) {
             throw new IllegalArgumentException("File not found: " + fileId);
@@ -136,26 +419,53 @@ public class FileSharingService {
             throw new SecurityException("Only file owner can delete the file");
         }
         
-        files.remove(fileId);
+        transactionTemplate.executeWithoutResult(status -> {
+            accessLogRepository.deleteByFileId(fileId);
+            fileRepository.deleteById(fileId);
+            referenceTracker.release(file.getChunkIds());
+        });
         logger.info("File deleted: {} by user: {}", file.getFilename(), userId);
     }
     
     /**
-     * Get files in a channel
+     * Get files in a channel visible to the user, newest first
      */
     public List<SharedFile> getChannelFiles(String channelId, String userId) {
-        return files.values().stream()
-            .filter(f -> f.getChannelId().equals(channelId))
-            .filter(f -> f.canAccess(userId))
-            .toList();
+        return getChannelFiles(channelId, userId, null, null, MAX_PAGE_SIZE).files();
+    }
+
+    /**
+     * One page of a channel's files visible to the user, newest first. Pass the previous page's
+     * cursor to continue; null cursor values start from the newest file.
+     */
+    public ChannelFilePage getChannelFiles(String channelId, String userId,
+                                           LocalDateTime beforeUploadedAt, String beforeFileId, int limit) {
+        int pageSize = pageSize(limit);
+        // One extra row tells whether another page exists
+        Limit fetch = Limit.of(pageSize + 1);
+        List<SharedFileEntity> rows = beforeUploadedAt == null
+            ? fileRepository.findChannelPage(channelId, userId, fetch)
+            : fileRepository.findChannelPageBefore(channelId, userId, beforeUploadedAt, beforeFileId, fetch);
+        boolean hasMore = rows.size() > pageSize;
+        List<SharedFile> files = rows.stream().limit(pageSize).map(SharedFile::new).toList();
+        SharedFile last = files.isEmpty() ? null : files.get(files.size() - 1);
+        return new ChannelFilePage(files,
+            last != null ? last.getUploadedAt() : null,
+            last != null ? last.getFileId() : null,
+            hasMore);
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
+
+    /**
+     * A page of channel files plus the keyset cursor for the next one
+     */
+    public record ChannelFilePage(List<SharedFile> files, LocalDateTime nextBeforeUploadedAt,
+                                  String nextBeforeFileId, boolean hasMore) { }
     
-    private void validateFile(String filename, byte[] fileContent) {
-        // Check file size
-        if (fileContent.length > MAX_FILE_SIZE) {
-            throw new IllegalArgumentException("File size exceeds maximum allowed: " + MAX_FILE_SIZE);
-        }
-        
+    private void validateFile(String filename) {
         // Check file type
         String extension = getFileExtension(filename).toLowerCase();
         if (!ALLOWED_TYPES.contains(extension)) {
@@ -168,60 +478,39 @@ public class FileSharingService {
         return lastDot > 0 ? filename.substring(lastDot + 1) : "";
     }
     
+    /**
+     * Read-only view of a shared file's metadata; members are listed by
+     * {@link #getFileMembers} rather than carried on every view
+     */
     public static class SharedFile {
-        private String fileId;
-        private String uploaderId;
-        private String channelId;
-        private String filename;
-        private String encryptedContent;
-        private String iv;
-        private String keyId;
-        private String mimeType;
-        private long fileSize;
-        private Set<String> sharedWith;
-        private List<AccessLog> accessLogs;
-        private LocalDateTime uploadedAt;
-        private boolean deleted;
+        private final String fileId;
+        private final String uploaderId;
+        private final String channelId;
+        private final String filename;
+        private final String mimeType;
+        private final long fileSize;
+        private final int chunkCount;
+        private final LocalDateTime uploadedAt;
         
         public static class AccessLog {
             public String userId;
             public LocalDateTime accessTime;
             
-            public AccessLog(String userId) {
+            public AccessLog(String userId, LocalDateTime accessTime) {
                 this.userId = userId;
-                this.accessTime = LocalDateTime.now();
+                this.accessTime = accessTime;
             }
         }
         
-        public SharedFile(String uploaderId, String channelId, String filename,
-                         String encryptedContent, String iv, String keyId,
-                         String mimeType, long fileSize) {
-            this.fileId = UUID.randomUUID().toString();
-            this.uploaderId = uploaderId;
-            this.channelId = channelId;
-            this.filename = filename;
-            this.encryptedContent = encryptedContent;
-            this.iv = iv;
-            this.keyId = keyId;
-            this.mimeType = mimeType;
-            this.fileSize = fileSize;
-            this.sharedWith = new HashSet<>();
-            this.sharedWith.add(uploaderId); // Owner can always access
-            this.accessLogs = new ArrayList<>();
-            this.uploadedAt = LocalDateTime.now();
-            this.deleted = false;
-        }
-        
-        public boolean canAccess(String userId) {
-            return sharedWith.contains(userId) && !deleted;
-        }
-        
-        public void addSharedWith(String userId) {
-            sharedWith.add(userId);
-        }
-        
-        public void addAccessLog(String userId) {
-            accessLogs.add(new AccessLog(userId));
+        SharedFile(SharedFileEntity entity) {
+            this.fileId = entity.getFileId();
+            this.uploaderId = entity.getUploaderId();
+            this.channelId = entity.getChannelId();
+            this.filename = entity.getFilename();
+            this.mimeType = entity.getMimeType();
+            this.fileSize = entity.getFileSize();
+            this.chunkCount = StreamingFileCipher.chunkCount(entity.getFileSize(), entity.getChunkSize());
+            this.uploadedAt = entity.getUploadedAt();
         }
         
         // Getters
@@ -229,13 +518,9 @@ public class FileSharingService {
         public String getUploaderId() { return uploaderId; }
         public String getChannelId() { return channelId; }
         public String getFilename() { return filename; }
-        public String getEncryptedContent() { return encryptedContent; }
-        public String getIv() { return iv; }
-        public String getKeyId() { return keyId; }
         public String getMimeType() { return mimeType; }
         public long getFileSize() { return fileSize; }
-        public Set<String> getSharedWith() { return new HashSet<>(sharedWith); }
-        public List<AccessLog> getAccessLogs() { return new ArrayList<>(accessLogs); }
+        public int getChunkCount() { return chunkCount; }
         public LocalDateTime getUploadedAt() { return uploadedAt; }
     }
 }
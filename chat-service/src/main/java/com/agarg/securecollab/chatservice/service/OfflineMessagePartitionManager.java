@@ -0,0 +1,116 @@
+package com.agarg.securecollab.chatservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offline Message Partition Manager
+ * Maintains the daily expires_at range partitions of offline_messages (see
+ * db/offline_messages_partitioning.sql): creates partitions ahead of time for every expiry a new
+ * message can get (today + message-ttl-days + ahead-days) and drops partitions whose whole range
+ * has expired. TTL enforcement becomes DETACH/DROP metadata work instead of row deletes.
+ * Partitions are detached CONCURRENTLY, which only takes SHARE UPDATE EXCLUSIVE on the parent,
+ * so queue reads and writes carry on; the statements run in autocommit because CONCURRENTLY
+ * is not allowed in a transaction block. Does nothing while the table is not partitioned.
+ */
+@Service
+public class OfflineMessagePartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineMessagePartitionManager.class);
+
+    private static final String TABLE = "offline_messages";
+    private static final String PARTITION_PREFIX = TABLE + "_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE; // yyyyMMdd
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long messageTtlDays;
+    private final int aheadDays;
+
+    public OfflineMessagePartitionManager(JdbcTemplate jdbcTemplate,
+                                          @Value("${securecollab.offline.partitions.enabled:false}") boolean enabled,
+                                          @Value("${securecollab.offline.message-ttl-days:7}") long messageTtlDays,
+                                          @Value("${securecollab.offline.partitions.ahead-days:3}") int aheadDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.messageTtlDays = messageTtlDays;
+        this.aheadDays = aheadDays;
+    }
+
+    /**
+     * Create upcoming partitions and drop expired ones (runs hourly, and at startup)
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${securecollab.offline.partitions.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        if (!enabled || !isPartitioned()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        createPartitions(today, today.plusDays(messageTtlDays + aheadDays));
+        dropExpiredPartitions(today);
+    }
+
+    private boolean isPartitioned() {
+        Integer count = jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM pg_partitioned_table p JOIN pg_class c ON c.oid = p.partrelid " +
+            "WHERE c.relname = ? AND pg_table_is_visible(c.oid)", Integer.class, TABLE);
+        return count != null && count > 0;
+    }
+
+    private void createPartitions(LocalDate from, LocalDate through) {
+        for (LocalDate day = from; !day.isAfter(through); day = day.plusDays(1)) {
+            // Dates are generated here, not user input, so inlining them is safe
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + PARTITION_PREFIX + day.format(SUFFIX) +
+                " PARTITION OF " + TABLE + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+        }
+    }
+
+    /**
+     * A daily partition is dropped once its upper bound (the next day) is not after today,
+     * i.e. every row in it has expired
+     */
+    private void dropExpiredPartitions(LocalDate today) {
+        List<Map<String, Object>> partitions = jdbcTemplate.queryForList(
+            "SELECT c.relname, i.inhdetachpending FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = ? AND pg_table_is_visible(p.oid)", TABLE);
+        for (Map<String, Object> row : partitions) {
+            String partition = (String) row.get("relname");
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue; // e.g. a default partition left by an older schema
+            }
+            LocalDate day;
+            try {
+                day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), SUFFIX);
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            if (day.plusDays(1).isAfter(today)) {
+                continue;
+            }
+            try {
+                if (Boolean.TRUE.equals(row.get("inhdetachpending"))) {
+                    // An earlier concurrent detach was interrupted; complete it
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition + " FINALIZE");
+                } else {
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition + " CONCURRENTLY");
+                }
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                logger.info("Dropped expired offline message partition {}", partition);
+            } catch (DataAccessException e) {
+                // Fails while a DEFAULT partition exists (see db/offline_messages_partitioning.sql)
+                logger.warn("Could not drop expired offline message partition {}: {}", partition, e.getMessage());
+            }
+        }
+    }
+}
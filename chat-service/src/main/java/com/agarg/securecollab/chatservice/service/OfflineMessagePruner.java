@@ -0,0 +1,161 @@
+package com.agarg.securecollab.chatservice.service;
+
+import com.agarg.securecollab.chatservice.entity.PruneCheckpointEntity;
+import com.agarg.securecollab.chatservice.repository.PruneCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offline Message Pruner
+ * Deletes expired offline messages in id-ordered chunks: one set-based DELETE per batch, each in
+ * its own short transaction together with a checkpoint of the last deleted id. A run that is
+ * interrupted resumes from the checkpoint; a run that completes resets it. Sleeping between
+ * batches keeps row locks and WAL pressure from starving delivery traffic.
+ */
+@Service
+public class OfflineMessagePruner {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineMessagePruner.class);
+
+    private static final String JOB_NAME = "prune-offline-messages";
+
+    // SKIP LOCKED so a batch never waits on rows a delivery transaction is deleting
+    private static final String DELETE_BATCH_SQL =
+        "WITH batch AS (" +
+        "  SELECT id FROM offline_messages WHERE expires_at < ? AND id > ? ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED" +
+        ") DELETE FROM offline_messages o USING batch WHERE o.id = batch.id RETURNING o.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PruneCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sleepMs;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter rowsDeleted;
+    private final Timer batchLockTime;
+
+    public OfflineMessagePruner(JdbcTemplate jdbcTemplate,
+                                PruneCheckpointRepository checkpointRepository,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${securecollab.offline.prune.batch-size:5000}") int batchSize,
+                                @Value("${securecollab.offline.prune.sleep-ms:200}") long sleepMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.sleepMs = sleepMs;
+        this.rowsDeleted = Counter.builder("offline.prune.rows")
+            .description("Expired offline messages deleted by the pruner")
+            .register(meterRegistry);
+        this.batchLockTime = Timer.builder("offline.prune.batch.lock")
+            .description("Duration of a prune batch transaction, i.e. how long its row locks are held")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Prune all messages expired before now, resuming from the checkpoint
+     * @return result of this run
+     */
+    public PruneResult prune() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Offline message prune already running, skipping");
+            return new PruneResult(0, 0, 0, 0);
+        }
+        try {
+            return pruneExpiredBefore(LocalDateTime.now());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private PruneResult pruneExpiredBefore(LocalDateTime cutoff) {
+        long lastId = checkpointRepository.findById(JOB_NAME).map(PruneCheckpointEntity::getLastId).orElse(0L);
+        if (lastId > 0) {
+            logger.info("Resuming offline message prune after id {}", lastId);
+        }
+        Timestamp cutoffTs = Timestamp.valueOf(cutoff);
+        long start = System.nanoTime();
+        long lockNanos = 0;
+        long total = 0;
+        int batches = 0;
+
+        while (true) {
+            long from = lastId;
+            long batchStart = System.nanoTime();
+            List<Long> deleted = transactionTemplate.execute(status -> {
+                List<Long> ids = jdbcTemplate.queryForList(DELETE_BATCH_SQL, Long.class, cutoffTs, from, batchSize);
+                if (!ids.isEmpty()) {
+                    long max = ids.stream().mapToLong(Long::longValue).max().getAsLong();
+                    checkpointRepository.save(new PruneCheckpointEntity(JOB_NAME, max, LocalDateTime.now()));
+                }
+                return ids;
+            });
+            long batchNanos = System.nanoTime() - batchStart;
+            batchLockTime.record(batchNanos, TimeUnit.NANOSECONDS);
+            lockNanos += batchNanos;
+            batches++;
+
+            if (deleted == null || deleted.isEmpty()) {
+                break;
+            }
+            total += deleted.size();
+            rowsDeleted.increment(deleted.size());
+            lastId = deleted.stream().mapToLong(Long::longValue).max().getAsLong();
+            if (deleted.size() < batchSize) {
+                break;
+            }
+            if (!sleepBetweenBatches()) {
+                // Interrupted: keep the checkpoint so the next run resumes here
+                return summarize(total, batches, start, lockNanos);
+            }
+        }
+
+        // Completed: the next run starts from the beginning with a new cutoff
+        checkpointRepository.save(new PruneCheckpointEntity(JOB_NAME, 0L, LocalDateTime.now()));
+        return summarize(total, batches, start, lockNanos);
+    }
+
+    private boolean sleepBetweenBatches() {
+        if (sleepMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(sleepMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private PruneResult summarize(long total, int batches, long startNanos, long lockNanos) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long lockMs = TimeUnit.NANOSECONDS.toMillis(lockNanos);
+        double rowsPerSec = elapsedMs > 0 ? total * 1000.0 / elapsedMs : total;
+        logger.info("Pruned {} expired offline messages in {} batches: {} ms, {} rows/sec, {} ms holding locks",
+            total, batches, elapsedMs, String.format("%.0f", rowsPerSec), lockMs);
+        return new PruneResult(total, batches, elapsedMs, lockMs);
+    }
+
+    public record PruneResult(long rowsDeleted, int batches, long elapsedMs, long lockMs) {
+        public double rowsPerSecond() {
+            return elapsedMs > 0 ? rowsDeleted * 1000.0 / elapsedMs : rowsDeleted;
+        }
+    }
+}
@@ -2,37 +2,61 @@ package com.agarg.securecollab.chatservice.service;
 
 import com.agarg.securecollab.chatservice.entity.OfflineMessageEntity;
 import com.agarg.securecollab.chatservice.model.Message;
+import com.agarg.securecollab.chatservice.presence.PresenceClient;
 import com.agarg.securecollab.chatservice.repository.OfflineMessageRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Offline Message Queue Service (persistent)
- * Stores encrypted messages in the database when recipients are offline
- * and delivers on reconnect. Uses JPA-backed repository.
+ * Stores encrypted messages when recipients are offline and delivers on reconnect.
+ * Recent messages sit in the Redis hot tier ({@link OfflineRedisTier}); older ones, and all
+ * messages when Redis is unavailable, in the JPA-backed repository. Reads go Postgres first,
+ * then Redis, which keeps delivery in queue order.
+ * Online/offline state comes from the shared Redis presence keys via {@link PresenceClient}.
  */
 @Service
 public class OfflineMessageQueueService {
 
     private static final Logger logger = LoggerFactory.getLogger(OfflineMessageQueueService.class);
 
-    private final OfflineMessageRepository repository;
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    // Cursor meaning "Postgres done, start of the Redis stream"
+    private static final String HOT_TIER_START = "0-0";
 
-    // In-memory presence tracking (hook into Redis in next iteration)
-    private final Set<String> offlineUsers = Collections.synchronizedSet(new HashSet<>());
+    private final OfflineMessageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final OfflineMessagePruner pruner;
+    private final OfflineRedisTier redisTier;
+    private final PresenceClient presenceClient;
+    private final boolean pruneScheduled;
 
     // TTL days for offline messages (configurable)
     private final long messageTtlDays;
 
     public OfflineMessageQueueService(OfflineMessageRepository repository,
-                                      @Value("${securecollab.offline.message-ttl-days:7}") long ttlDays) {
+                                      PlatformTransactionManager transactionManager,
+                                      OfflineMessagePruner pruner,
+                                      OfflineRedisTier redisTier,
+                                      PresenceClient presenceClient,
+                                      @Value("${securecollab.offline.message-ttl-days:7}") long ttlDays,
+                                      @Value("${securecollab.offline.prune.scheduled:true}") boolean pruneScheduled) {
         this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pruner = pruner;
+        this.redisTier = redisTier;
+        this.presenceClient = presenceClient;
+        this.pruneScheduled = pruneScheduled;
         this.messageTtlDays = ttlDays;
     }
 
@@ -44,6 +68,12 @@ public class OfflineMessageQueueService {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime expiresAt = now.plusDays(messageTtlDays);
 
+        if (redisTier.enqueue(userId, message.getId(), message.getChannelId(), message.getSenderId(),
+                message.getEncryptedContent(), now, expiresAt)) {
+            logger.info("Queued offline message {} for user {} in Redis", message.getId(), userId);
+            return;
+        }
+
         OfflineMessageEntity entity = new OfflineMessageEntity(
             message.getId(), userId, message.getChannelId(), message.getSenderId(),
             message.getEncryptedContent(), now, expiresAt, "PENDING"
@@ -54,79 +84,237 @@ public class OfflineMessageQueueService {
     }
 
     /**
-     * Mark a user offline
+     * Mark a user offline. Presence is owned by websocket-service; this only drops the
+     * locally cached state so the next check reads the shared presence key.
      */
     public void markUserOffline(String userId) {
-        offlineUsers.add(userId);
+        presenceClient.invalidate(userId);
         logger.info("User marked offline: {}", userId);
     }
 
     /**
-     * Mark user online and return pending messages; deletes delivered messages
+     * Mark user online and return pending messages; deletes delivered messages.
+     * Reads and deletes page by page; prefer {@link #streamPendingMessages} for large backlogs.
      */
-    @Transactional
     public List<Message> markUserOnlineAndRetrieveMessages(String userId) {
-        offlineUsers.remove(userId);
-        List<OfflineMessageEntity> rows = repository.findByRecipientIdOrderByCreatedAtAsc(userId);
-        if (rows == null || rows.isEmpty()) return Collections.emptyList();
-
         List<Message> out = new ArrayList<>();
-        for (OfflineMessageEntity r : rows) {
-            if (r.getExpiresAt() != null && r.getExpiresAt().isBefore(LocalDateTime.now())) {
-                logger.warn("Dropping expired offline message: {}", r.getMessageId());
-                repository.delete(r);
-                continue;
+        streamPendingMessages(userId, DEFAULT_PAGE_SIZE, out::addAll);
+        return out;
+    }
+
+    /**
+     * Mark user online and hand pending messages to the sink one keyset page at a time.
+     * Each page is read and bulk-deleted in its own short transaction after the sink accepts it,
+     * so neither heap nor transaction size grows with the backlog.
+     * @return number of messages delivered
+     */
+    public int streamPendingMessages(String userId, int pageSize, Consumer<List<Message>> sink) {
+        presenceClient.invalidate(userId);
+        int delivered = 0;
+        int expired = 0;
+        LocalDateTime afterCreatedAt = null;
+        Long afterId = null;
+        while (true) {
+            List<OfflineMessageEntity> rows = afterCreatedAt == null
+                ? repository.findByRecipientIdOrderByCreatedAtAscIdAsc(userId, Limit.of(pageSize))
+                : repository.findPageAfter(userId, afterCreatedAt, afterId, Limit.of(pageSize));
+            if (rows.isEmpty()) break;
+
+            LocalDateTime now = LocalDateTime.now();
+            List<Message> page = new ArrayList<>(rows.size());
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (OfflineMessageEntity r : rows) {
+                ids.add(r.getId());
+                if (r.getExpiresAt() != null && r.getExpiresAt().isBefore(now)) {
+                    expired++;
+                    continue;
+                }
+                page.add(toMessage(r));
+            }
+
+            if (!page.isEmpty()) {
+                sink.accept(page);
+                delivered += page.size();
             }
+            // Delivered and expired rows of this page go in one statement
+            transactionTemplate.executeWithoutResult(status -> repository.deleteByRecipientIdAndIdIn(userId, ids));
+
+            OfflineMessageEntity last = rows.get(rows.size() - 1);
+            afterCreatedAt = last.getCreatedAt();
+            afterId = last.getId();
+            if (rows.size() < pageSize) break;
+        }
 
-            Message m = new Message();
-            m.setId(r.getMessageId());
-            m.setChannelId(r.getChannelId());
-            m.setSenderId(r.getSenderId());
-            m.setEncryptedContent(r.getEncryptedPayload());
-            m.setTimestamp(r.getCreatedAt());
-            m.setStatus(Message.MessageStatus.DELIVERED);
-            out.add(m);
+        // Then the Redis hot tier, which holds the newest messages
+        while (true) {
+            List<OfflineRedisTier.HotMessage> hot = redisTier.page(userId, null, pageSize);
+            if (hot.isEmpty()) break;
 
-            repository.delete(r);
+            LocalDateTime now = LocalDateTime.now();
+            List<Message> page = new ArrayList<>(hot.size());
+            List<String> streamIds = new ArrayList<>(hot.size());
+            for (OfflineRedisTier.HotMessage h : hot) {
+                streamIds.add(h.streamId());
+                if (h.expiresAt().isBefore(now)) {
+                    expired++;
+                    continue;
+                }
+                page.add(toMessage(h));
+            }
+            if (!page.isEmpty()) {
+                sink.accept(page);
+                delivered += page.size();
+            }
+            redisTier.delete(userId, streamIds);
+            if (hot.size() < pageSize) break;
         }
 
-        logger.info("Delivered {} pending messages for user {}", out.size(), userId);
-        return out;
+        if (expired > 0) {
+            logger.warn("Dropped {} expired offline messages for user {}", expired, userId);
+        }
+        logger.info("Delivered {} pending messages for user {}", delivered, userId);
+        return delivered;
+    }
+
+    private Message toMessage(OfflineMessageEntity r) {
+        Message m = new Message();
+        m.setId(r.getMessageId());
+        m.setChannelId(r.getChannelId());
+        m.setSenderId(r.getSenderId());
+        m.setEncryptedContent(r.getEncryptedPayload());
+        m.setTimestamp(r.getCreatedAt());
+        m.setStatus(Message.MessageStatus.DELIVERED);
+        return m;
+    }
+
+    private Message toMessage(OfflineRedisTier.HotMessage h) {
+        Message m = new Message();
+        m.setId(h.messageId());
+        m.setChannelId(h.channelId());
+        m.setSenderId(h.senderId());
+        m.setEncryptedContent(h.payload());
+        m.setTimestamp(h.createdAt());
+        m.setStatus(Message.MessageStatus.DELIVERED);
+        return m;
+    }
+
+    /**
+     * One page of pending messages, oldest first, without deleting anything. Postgres rows are
+     * paged by keyset on (createdAt, id), then Redis entries by stream id. Pass back the cursor
+     * of the previous page (all null for the first page). Expired rows are skipped.
+     */
+    public PendingPage getPendingPage(String userId, LocalDateTime afterCreatedAt, Long afterId,
+                                      String afterStreamId, int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<PendingMessage> messages = new ArrayList<>(limit);
+        LocalDateTime nextCreatedAt = afterCreatedAt;
+        Long nextId = afterId;
+        int consumed = 0;
+
+        if (afterStreamId == null) {
+            List<OfflineMessageEntity> rows = afterCreatedAt == null || afterId == null
+                ? repository.findByRecipientIdOrderByCreatedAtAscIdAsc(userId, Limit.of(limit + 1))
+                : repository.findPageAfter(userId, afterCreatedAt, afterId, Limit.of(limit + 1));
+            for (; consumed < rows.size() && consumed < limit; consumed++) {
+                OfflineMessageEntity r = rows.get(consumed);
+                nextCreatedAt = r.getCreatedAt();
+                nextId = r.getId();
+                if (r.getExpiresAt() == null || !r.getExpiresAt().isBefore(now)) {
+                    messages.add(new PendingMessage(r.getId(), null, r.getMessageId(), r.getChannelId(),
+                        r.getSenderId(), r.getEncryptedPayload(), r.getCreatedAt()));
+                }
+            }
+            // One extra row tells us whether Postgres has another page
+            if (rows.size() > limit) {
+                return new PendingPage(messages, nextCreatedAt, nextId, null, true);
+            }
+            afterStreamId = HOT_TIER_START;
+        }
+
+        // Postgres is exhausted; fill the rest of the page from the Redis hot tier
+        String nextStreamId = afterStreamId;
+        int remaining = limit - consumed;
+        if (remaining == 0) {
+            return new PendingPage(messages, nextCreatedAt, nextId, nextStreamId, redisTier.size(userId) > 0);
+        }
+        List<OfflineRedisTier.HotMessage> hot = redisTier.page(userId,
+            HOT_TIER_START.equals(afterStreamId) ? null : afterStreamId, remaining + 1);
+        for (int i = 0; i < hot.size() && i < remaining; i++) {
+            OfflineRedisTier.HotMessage h = hot.get(i);
+            nextStreamId = h.streamId();
+            if (!h.expiresAt().isBefore(now)) {
+                messages.add(new PendingMessage(null, h.streamId(), h.messageId(), h.channelId(), h.senderId(),
+                    h.payload(), h.createdAt()));
+            }
+        }
+        return new PendingPage(messages, nextCreatedAt, nextId, nextStreamId, hot.size() > remaining);
+    }
+
+    /**
+     * Delete delivered messages once the client has acknowledged them
+     * @param ids Postgres row ids
+     * @param streamIds Redis stream entry ids
+     */
+    @Transactional
+    public int acknowledge(String userId, Collection<Long> ids, Collection<String> streamIds) {
+        int deleted = 0;
+        if (ids != null && !ids.isEmpty()) {
+            deleted += repository.deleteByRecipientIdAndIdIn(userId, ids);
+        }
+        if (streamIds != null && !streamIds.isEmpty()) {
+            redisTier.delete(userId, streamIds);
+            deleted += streamIds.size();
+        }
+        logger.debug("Acknowledged {} offline messages for user {}", deleted, userId);
+        return deleted;
     }
 
     public boolean isUserOffline(String userId) {
-        return offlineUsers.contains(userId);
+        return !presenceClient.isOnline(userId);
     }
 
-    public int getPendingMessageCount(String userId) {
-        return repository.findByRecipientIdOrderByCreatedAtAsc(userId).size();
+    public long getPendingMessageCount(String userId) {
+        return repository.countByRecipientId(userId) + redisTier.size(userId);
     }
 
     @Transactional
     public void clearPendingMessages(String userId) {
         repository.deleteByRecipientId(userId);
+        redisTier.clear(userId);
         logger.info("Cleared pending messages for user: {}", userId);
     }
 
     public Map<String, Object> getQueueStatistics() {
         Map<String, Object> stats = new HashMap<>();
-        stats.put("offlineUsersCount", offlineUsers.size());
-        stats.put("totalQueuedMessages", repository.count());
+        stats.put("presenceCachedUsers", presenceClient.getCachedUserCount());
+        long persisted = repository.count();
+        long hot = redisTier.totalSize();
+        stats.put("persistedQueuedMessages", persisted);
+        stats.put("hotQueuedMessages", hot);
+        stats.put("totalQueuedMessages", persisted + hot);
         return stats;
     }
 
     /**
-     * Scheduled pruning of expired messages (runs hourly)
+     * Scheduled pruning of expired messages (runs hourly); the same pruner backs
+     * the standalone PruneOfflineMessagesJob
      */
     @Scheduled(fixedDelayString = "${securecollab.offline.prune-interval-ms:3600000}")
-    @Transactional
     public void pruneExpiredMessages() {
-        List<OfflineMessageEntity> expired = repository.findByExpiresAtBefore(LocalDateTime.now());
-        int removed = 0;
-        for (OfflineMessageEntity e : expired) {
-            repository.delete(e);
-            removed++;
+        if (pruneScheduled) {
+            pruner.prune();
         }
-        logger.info("Pruned {} expired offline messages", removed);
     }
+
+    /**
+     * A pending message; id is set for Postgres rows, streamId for Redis entries
+     */
+    public record PendingMessage(Long id, String streamId, String messageId, String channelId, String senderId,
+                                 String encryptedContent, LocalDateTime createdAt) { }
+
+    /**
+     * A page of pending messages plus the keyset cursor to request the next one
+     */
+    public record PendingPage(List<PendingMessage> messages, LocalDateTime nextAfterCreatedAt,
+                              Long nextAfterId, String nextAfterStreamId, boolean hasMore) { }
 }
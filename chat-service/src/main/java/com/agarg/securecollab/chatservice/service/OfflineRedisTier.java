@@ -0,0 +1,320 @@
+package com.agarg.securecollab.chatservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offline Redis Tier
+ * Hot tier of the offline queue: recent pending messages live in a per-recipient Redis stream
+ * (offline:stream:{userId}) so queueing and reconnect drains usually avoid Postgres. The oldest
+ * entries spill to offline_messages when a stream exceeds hot-max-messages or entries get older
+ * than hot-max-age, so Postgres always holds a recipient's older messages and Redis the newer
+ * ones: draining Postgres first, then Redis, preserves order.
+ * Spilling inserts before XDEL, ignores rows already present for the same recipient and
+ * message id, and only XDELs entries whose row is then found in Postgres, so a crash or a
+ * failed insert never loses a message; at worst an entry is spilled again next time.
+ */
+@Service
+public class OfflineRedisTier {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineRedisTier.class);
+
+    private static final String STREAM_KEY_PREFIX = "offline:stream:";
+    private static final String RECIPIENTS_KEY = "offline:recipients";
+
+    private static final String SPILL_SQL =
+        "INSERT INTO offline_messages (message_id, recipient_id, channel_id, sender_id, encrypted_payload, " +
+        "status, created_at, expires_at) VALUES (?, ?, ?, ?, ?, 'PENDING', ?, ?) " +
+        "ON CONFLICT (recipient_id, message_id, expires_at) DO NOTHING";
+
+    private static final String SPILLED_SQL =
+        "SELECT message_id FROM offline_messages WHERE recipient_id = ? AND message_id IN (%s)";
+
+    private final StringRedisTemplate redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int hotMaxMessages;
+    private final Duration hotMaxAge;
+    private final int spillBatch;
+    private final Duration keyTtl;
+
+    private final Counter hotWrites;
+    private final Counter spilled;
+    private final Counter fallbacks;
+
+    public OfflineRedisTier(StringRedisTemplate redisTemplate,
+                            JdbcTemplate jdbcTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${securecollab.offline.redis.enabled:true}") boolean enabled,
+                            @Value("${securecollab.offline.redis.hot-max-messages:1000}") int hotMaxMessages,
+                            @Value("${securecollab.offline.redis.hot-max-age:1h}") Duration hotMaxAge,
+                            @Value("${securecollab.offline.redis.spill-batch:500}") int spillBatch,
+                            @Value("${securecollab.offline.message-ttl-days:7}") long messageTtlDays) {
+        this.redisTemplate = redisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.hotMaxMessages = hotMaxMessages;
+        this.hotMaxAge = hotMaxAge;
+        this.spillBatch = spillBatch;
+        this.keyTtl = Duration.ofDays(messageTtlDays);
+        this.hotWrites = Counter.builder("offline.redis.writes")
+            .description("Offline messages queued in the Redis hot tier")
+            .register(meterRegistry);
+        this.spilled = Counter.builder("offline.redis.spilled")
+            .description("Offline messages moved from Redis to Postgres")
+            .register(meterRegistry);
+        this.fallbacks = Counter.builder("offline.redis.fallbacks")
+            .description("Offline messages written straight to Postgres because Redis was unavailable")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a message in the recipient's stream, spilling the oldest entries past the cap
+     * @return false if the hot tier is disabled or unavailable; the caller writes to Postgres
+     */
+    public boolean enqueue(String userId, String messageId, String channelId, String senderId,
+                           String payload, LocalDateTime createdAt, LocalDateTime expiresAt) {
+        if (!enabled) {
+            return false;
+        }
+        String key = STREAM_KEY_PREFIX + userId;
+        try {
+            Map<String, String> fields = new HashMap<>();
+            fields.put("messageId", messageId);
+            fields.put("channelId", channelId != null ? channelId : "");
+            fields.put("senderId", senderId != null ? senderId : "");
+            fields.put("payload", payload);
+            fields.put("createdAt", createdAt.toString());
+            fields.put("expiresAt", expiresAt.toString());
+            redisTemplate.opsForStream().add(MapRecord.create(key, fields));
+        } catch (Exception e) {
+            fallbacks.increment();
+            logger.warn("Redis offline tier unavailable, queueing {} in Postgres: {}", messageId, e.getMessage());
+            return false;
+        }
+        hotWrites.increment();
+
+        // The message is queued from here on; returning false would make the caller store it twice
+        try {
+            redisTemplate.expire(key, keyTtl);
+            redisTemplate.opsForSet().add(RECIPIENTS_KEY, userId);
+            Long size = redisTemplate.opsForStream().size(key);
+            if (size != null && size > hotMaxMessages) {
+                spill(userId, (int) (size - hotMaxMessages), Long.MAX_VALUE);
+            }
+        } catch (Exception e) {
+            // The next enqueue or spillAged run spills it again
+            logger.warn("Spilling offline messages for user {} failed after queueing {}: {}",
+                userId, messageId, e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Up to count entries after afterStreamId (exclusive; null for the start), oldest first
+     */
+    public List<HotMessage> page(String userId, String afterStreamId, int count) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        Range<String> range = afterStreamId == null
+            ? Range.unbounded()
+            : Range.rightUnbounded(Range.Bound.exclusive(afterStreamId));
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+            .range(STREAM_KEY_PREFIX + userId, range, Limit.limit().count(count));
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<HotMessage> messages = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            messages.add(toHotMessage(record));
+        }
+        return messages;
+    }
+
+    public void delete(String userId, Collection<String> streamIds) {
+        if (!enabled || streamIds == null || streamIds.isEmpty()) {
+            return;
+        }
+        redisTemplate.opsForStream().delete(STREAM_KEY_PREFIX + userId, streamIds.toArray(String[]::new));
+    }
+
+    public long size(String userId) {
+        if (!enabled) {
+            return 0;
+        }
+        Long size = redisTemplate.opsForStream().size(STREAM_KEY_PREFIX + userId);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * Total entries across all recipients' streams
+     */
+    public long totalSize() {
+        if (!enabled) {
+            return 0;
+        }
+        long total = 0;
+        try (Cursor<String> recipients = redisTemplate.opsForSet()
+                .scan(RECIPIENTS_KEY, ScanOptions.scanOptions().count(500).build())) {
+            while (recipients.hasNext()) {
+                total += size(recipients.next());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Drop a recipient's stream and its entry in the recipient set
+     */
+    public void clear(String userId) {
+        if (!enabled) {
+            return;
+        }
+        redisTemplate.delete(STREAM_KEY_PREFIX + userId);
+        redisTemplate.opsForSet().remove(RECIPIENTS_KEY, userId);
+    }
+
+    /**
+     * Move entries older than hot-max-age to Postgres for every recipient with a stream
+     */
+    @Scheduled(fixedDelayString = "${securecollab.offline.redis.spill-interval-ms:60000}")
+    public void spillAged() {
+        if (!enabled) {
+            return;
+        }
+        long cutoffMs = System.currentTimeMillis() - hotMaxAge.toMillis();
+        int moved = 0;
+        try (Cursor<String> recipients = redisTemplate.opsForSet()
+                .scan(RECIPIENTS_KEY, ScanOptions.scanOptions().count(500).build())) {
+            while (recipients.hasNext()) {
+                String userId = recipients.next();
+                int n;
+                do {
+                    n = spill(userId, spillBatch, cutoffMs);
+                    moved += n;
+                } while (n == spillBatch);
+                if (size(userId) == 0) {
+                    redisTemplate.opsForSet().remove(RECIPIENTS_KEY, userId);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Spilling aged offline messages failed: {}", e.getMessage());
+        }
+        if (moved > 0) {
+            logger.info("Spilled {} aged offline messages from Redis to Postgres", moved);
+        }
+    }
+
+    /**
+     * Move up to count of the oldest entries queued before cutoffMs into Postgres
+     * @return number of entries taken off the stream, expired ones included
+     */
+    private int spill(String userId, int count, long cutoffMs) {
+        List<HotMessage> oldest = page(userId, null, count);
+        LocalDateTime now = LocalDateTime.now();
+        List<HotMessage> batch = new ArrayList<>(oldest.size());
+        List<String> expired = new ArrayList<>();
+        for (HotMessage message : oldest) {
+            if (message.enqueuedAtMs() >= cutoffMs) {
+                break;
+            }
+            // Nothing would deliver it, and its day's partition may already be dropped
+            if (message.expiresAt().isBefore(now)) {
+                expired.add(message.streamId());
+            } else {
+                batch.add(message);
+            }
+        }
+        delete(userId, expired);
+        if (batch.isEmpty()) {
+            return expired.size();
+        }
+        // Insert first; a crash before XDEL leaves an entry that ON CONFLICT absorbs next time
+        jdbcTemplate.batchUpdate(SPILL_SQL, batch, batch.size(), (ps, m) -> {
+            ps.setString(1, m.messageId());
+            ps.setString(2, userId);
+            ps.setString(3, m.channelId());
+            ps.setString(4, m.senderId());
+            ps.setString(5, m.payload());
+            ps.setTimestamp(6, Timestamp.valueOf(m.createdAt()));
+            ps.setTimestamp(7, Timestamp.valueOf(m.expiresAt()));
+        });
+        List<String> stored = storedStreamIds(userId, batch);
+        delete(userId, stored);
+        spilled.increment(stored.size());
+        if (stored.size() < batch.size()) {
+            logger.warn("{} of {} spilled offline messages for user {} not found in Postgres; kept in Redis",
+                batch.size() - stored.size(), batch.size(), userId);
+            // Stop this round rather than re-reading the same entries
+            return 0;
+        }
+        return expired.size() + stored.size();
+    }
+
+    /**
+     * Stream ids of the entries in batch that now have a row in offline_messages
+     */
+    private List<String> storedStreamIds(String userId, List<HotMessage> batch) {
+        String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+        Object[] args = new Object[batch.size() + 1];
+        args[0] = userId;
+        for (int i = 0; i < batch.size(); i++) {
+            args[i + 1] = batch.get(i).messageId();
+        }
+        Set<String> rows = new HashSet<>(
+            jdbcTemplate.queryForList(String.format(SPILLED_SQL, placeholders), String.class, args));
+        List<String> stored = new ArrayList<>(batch.size());
+        for (HotMessage m : batch) {
+            if (rows.contains(m.messageId())) {
+                stored.add(m.streamId());
+            }
+        }
+        return stored;
+    }
+
+    private static HotMessage toHotMessage(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> v = record.getValue();
+        RecordId id = record.getId();
+        return new HotMessage(
+            id.getValue(),
+            (String) v.get("messageId"),
+            emptyToNull((String) v.get("channelId")),
+            emptyToNull((String) v.get("senderId")),
+            (String) v.get("payload"),
+            LocalDateTime.parse((String) v.get("createdAt")),
+            LocalDateTime.parse((String) v.get("expiresAt")),
+            id.getTimestamp());
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * A pending message held in Redis; enqueuedAtMs is the time part of its stream id
+     */
+    public record HotMessage(String streamId, String messageId, String channelId, String senderId, String payload,
+                             LocalDateTime createdAt, LocalDateTime expiresAt, long enqueuedAtMs) { }
+}
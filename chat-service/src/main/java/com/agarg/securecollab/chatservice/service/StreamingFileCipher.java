@@ -0,0 +1,250 @@
+package com.agarg.securecollab.chatservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Streaming File Cipher
+ * Chunked AES-256-GCM in the STREAM construction: the plaintext is cut into fixed-size chunks,
+ * each sealed on its own with nonce = 7-byte random prefix || 32-bit chunk index || last-chunk flag.
+ * Reordering, dropping or truncating chunks fails authentication, and any chunk can be opened on
+ * its own, so downloads can start at an arbitrary offset. Only two plaintext buffers and one
+ * sealed buffer are live per transfer, whatever the file size.
+ * For deduplicated files, {@link #encryptConvergent} instead seals each chunk under
+ * HMAC-SHA256(secret, chunk), so equal chunks produce equal blobs; the per-chunk keys are
+ * returned to the caller to be wrapped, and supply the ordering and integrity binding.
+ */
+@Component
+public class StreamingFileCipher {
+
+    public static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int CHUNK_KEY_LENGTH = 32;
+
+    private final EncryptionService encryptionService;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final int chunkSize;
+
+    public StreamingFileCipher(EncryptionService encryptionService,
+                               @Value("${securecollab.file-sharing.chunk-size:65536}") int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.encryptionService = encryptionService;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Plaintext chunk size used for new uploads
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public byte[] newNoncePrefix() {
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        secureRandom.nextBytes(prefix);
+        return prefix;
+    }
+
+    /**
+     * Number of chunks for a plaintext; an empty file still has one (empty, final) chunk
+     */
+    public static int chunkCount(long plaintextLength, int chunkSize) {
+        return (int) Math.max(1, (plaintextLength + chunkSize - 1) / chunkSize);
+    }
+
+    public static int sealedChunkSize(int chunkSize) {
+        return chunkSize + EncryptionService.GCM_TAG_BYTES;
+    }
+
+    /**
+     * Read the channel to EOF, sealing it chunk by chunk into the sink
+     * @param maxBytes upload limit; exceeding it aborts with IllegalArgumentException
+     * @return plaintext length
+     */
+    public long encrypt(ReadableByteChannel in, String keyId, byte[] noncePrefix, long maxBytes,
+                        ChunkSink sink) throws IOException {
+        ByteBuffer current = ByteBuffer.allocate(chunkSize);
+        ByteBuffer next = ByteBuffer.allocate(chunkSize);
+        ByteBuffer sealed = ByteBuffer.allocate(sealedChunkSize(chunkSize));
+        long total = 0;
+        int index = 0;
+
+        fill(in, current);
+        while (true) {
+            // Look one chunk ahead so the final chunk can be flagged as such
+            boolean last = current.hasRemaining() || !fill(in, next);
+            total += current.position();
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("File size exceeds maximum allowed: " + maxBytes);
+            }
+            current.flip();
+            sealed.clear();
+            encryptionService.sealChunk(current, sealed, keyId, nonce(noncePrefix, index, last), null);
+            sealed.flip();
+            sink.accept(index, sealed);
+            if (last) {
+                return total;
+            }
+            index++;
+            ByteBuffer swap = current;
+            current = next;
+            next = swap;
+            next.clear();
+        }
+    }
+
+    /**
+     * Read the channel to EOF, sealing each chunk under a key derived from the chunk itself
+     * @param secret keys the content hash, so chunk keys cannot be derived without it
+     * @return plaintext length
+     */
+    public long encryptConvergent(ReadableByteChannel in, byte[] secret, long maxBytes,
+                                  ConvergentChunkSink sink) throws IOException {
+        Mac mac = hmac(secret);
+        ByteBuffer plain = ByteBuffer.allocate(chunkSize);
+        ByteBuffer sealed = ByteBuffer.allocate(sealedChunkSize(chunkSize));
+        long total = 0;
+        int index = 0;
+        boolean more = true;
+        while (more) {
+            plain.clear();
+            fill(in, plain);
+            // A short chunk means EOF; an exactly-full one is followed by an empty read
+            more = !plain.hasRemaining();
+            if (plain.position() > 0 || index == 0) {
+                total += plain.position();
+                if (total > maxBytes) {
+                    throw new IllegalArgumentException("File size exceeds maximum allowed: " + maxBytes);
+                }
+                plain.flip();
+                mac.update(plain.duplicate());
+                byte[] chunkKey = mac.doFinal();
+                sealed.clear();
+                encryptionService.sealConvergentChunk(plain, sealed, new SecretKeySpec(chunkKey, "AES"));
+                sealed.flip();
+                sink.accept(index++, sealed, chunkKey);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Decrypt plaintext bytes [offset, offset + length) of a file to the channel, opening only
+     * the chunks that overlap the range
+     */
+    public void decrypt(ChunkSource source, String keyId, byte[] noncePrefix, int fileChunkSize,
+                        long plaintextLength, long offset, long length, WritableByteChannel out) throws IOException {
+        int lastIndex = chunkCount(plaintextLength, fileChunkSize) - 1;
+        decryptRange(source, fileChunkSize, plaintextLength, offset, length, out, (index, sealed, plain) ->
+            encryptionService.openChunk(sealed, plain, keyId, nonce(noncePrefix, index, index == lastIndex), null));
+    }
+
+    /**
+     * Range decrypt for a file sealed by {@link #encryptConvergent}
+     * @param chunkKeys the unwrapped per-chunk keys, concatenated in chunk order
+     */
+    public void decryptConvergent(ChunkSource source, byte[] chunkKeys, int fileChunkSize,
+                                  long plaintextLength, long offset, long length, WritableByteChannel out) throws IOException {
+        if (chunkKeys.length != chunkCount(plaintextLength, fileChunkSize) * CHUNK_KEY_LENGTH) {
+            throw new IllegalArgumentException("Chunk key list does not match file length");
+        }
+        decryptRange(source, fileChunkSize, plaintextLength, offset, length, out, (index, sealed, plain) ->
+            encryptionService.openConvergentChunk(sealed, plain,
+                new SecretKeySpec(chunkKeys, index * CHUNK_KEY_LENGTH, CHUNK_KEY_LENGTH, "AES")));
+    }
+
+    private static void decryptRange(ChunkSource source, int fileChunkSize, long plaintextLength,
+                                     long offset, long length, WritableByteChannel out,
+                                     ChunkOpener opener) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > plaintextLength) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + (offset + length)
+                + ") outside file of " + plaintextLength + " bytes");
+        }
+        ByteBuffer plain = ByteBuffer.allocate(fileChunkSize);
+        long end = offset + length;
+        for (long index = offset / fileChunkSize; index * fileChunkSize < end; index++) {
+            ByteBuffer sealed = source.read((int) index);
+            plain.clear();
+            opener.open((int) index, sealed, plain);
+            plain.flip();
+            long chunkStart = index * fileChunkSize;
+            plain.position((int) Math.max(0, offset - chunkStart));
+            plain.limit((int) Math.min(plain.limit(), end - chunkStart));
+            while (plain.hasRemaining()) {
+                out.write(plain);
+            }
+        }
+    }
+
+    private static Mac hmac(byte[] secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static byte[] nonce(byte[] prefix, int index, boolean last) {
+        byte[] nonce = new byte[EncryptionService.GCM_NONCE_LENGTH];
+        System.arraycopy(prefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    /**
+     * Fill the buffer from the channel
+     * @return false if EOF was hit before any byte was read
+     */
+    private static boolean fill(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.position() > start;
+    }
+
+    /**
+     * Receives each sealed chunk (ciphertext || tag); the buffer is reused after the call returns
+     */
+    @FunctionalInterface
+    public interface ChunkSink {
+        void accept(int index, ByteBuffer sealed) throws IOException;
+    }
+
+    /**
+     * Receives each convergently sealed chunk and the key it was sealed under
+     */
+    @FunctionalInterface
+    public interface ConvergentChunkSink {
+        void accept(int index, ByteBuffer sealed, byte[] chunkKey) throws IOException;
+    }
+
+    /**
+     * Supplies the sealed bytes of one chunk
+     */
+    @FunctionalInterface
+    public interface ChunkSource {
+        ByteBuffer read(int index) throws IOException;
+    }
+
+    private interface ChunkOpener {
+        void open(int index, ByteBuffer sealed, ByteBuffer plain);
+    }
+}
@@ -0,0 +1,186 @@
+package com.agarg.securecollab.chatservice.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Blob Reference Tracker
+ * Reference counts for blobs in the {@link BlobStore} (table blob_refs), shared by every file
+ * that points at a blob, plus a garbage collector for blobs whose count dropped to zero.
+ * Writers acquire a reference before storing a blob; the collector deletes a blob's file while
+ * holding its row lock. An upload racing the collector therefore either blocks until the row is
+ * gone and then re-stores the blob, or bumps the count first so the collector skips it.
+ */
+@Component
+public class BlobReferenceTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobReferenceTracker.class);
+
+    private static final String ACQUIRE_SQL =
+        "INSERT INTO blob_refs (blob_id, ref_count, size_bytes, created_at) VALUES (?, 1, ?, now()) " +
+        "ON CONFLICT (blob_id) DO UPDATE SET ref_count = blob_refs.ref_count + 1 RETURNING ref_count";
+
+    private static final String RELEASE_SQL =
+        "UPDATE blob_refs SET ref_count = ref_count - 1 WHERE blob_id = ?";
+
+    private static final String SELECT_ORPHANS_SQL =
+        "SELECT blob_id FROM blob_refs WHERE ref_count <= 0 LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String DELETE_ROW_SQL = "DELETE FROM blob_refs WHERE blob_id = ?";
+
+    private static final String STATS_SQL =
+        "SELECT COUNT(*), COALESCE(SUM(size_bytes), 0), COALESCE(SUM(size_bytes * ref_count), 0) " +
+        "FROM blob_refs WHERE ref_count > 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlobStore blobStore;
+    private final int gcBatchSize;
+
+    private final Counter dedupHits;
+    private final Counter bytesSaved;
+    private final Counter blobsCollected;
+    private final AtomicLong storedBlobs = new AtomicLong();
+    private final AtomicLong physicalBytes = new AtomicLong();
+    private final AtomicLong logicalBytes = new AtomicLong();
+
+    public BlobReferenceTracker(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                BlobStore blobStore,
+                                MeterRegistry meterRegistry,
+                                @Value("${securecollab.file-sharing.gc.batch-size:500}") int gcBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.blobStore = blobStore;
+        this.gcBatchSize = gcBatchSize;
+        this.dedupHits = Counter.builder("files.dedup.hits")
+            .description("Chunks that were already stored and only gained a reference")
+            .register(meterRegistry);
+        this.bytesSaved = Counter.builder("files.dedup.bytes.saved")
+            .description("Sealed bytes not written because an identical blob existed")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.blobsCollected = Counter.builder("files.blobs.collected")
+            .description("Unreferenced blobs deleted by the garbage collector")
+            .register(meterRegistry);
+        Gauge.builder("files.blobs.stored", storedBlobs, AtomicLong::get)
+            .description("Referenced blobs in the store")
+            .register(meterRegistry);
+        Gauge.builder("files.storage.physical", physicalBytes, AtomicLong::get)
+            .description("Bytes held by referenced blobs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("files.storage.logical", logicalBytes, AtomicLong::get)
+            .description("Bytes that would be held without deduplication")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Take a reference on a blob and make sure its bytes are stored; the reference is dropped
+     * again if storing fails
+     * @return true if the blob already existed (a deduplication hit)
+     */
+    public boolean acquireAndStore(String blobId, ByteBuffer content) throws IOException {
+        int size = content.remaining();
+        Long refCount = jdbcTemplate.queryForObject(ACQUIRE_SQL, Long.class, blobId, size);
+        try {
+            // Stored even on a hit: the row may predate a crash that lost the file
+            blobStore.put(blobId, content);
+        } catch (IOException | RuntimeException e) {
+            // The caller never learns the id, so give the reference back here or the blob is never collected
+            release(List.of(blobId));
+            throw e;
+        }
+        if (refCount != null && refCount > 1) {
+            dedupHits.increment();
+            bytesSaved.increment(size);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop one reference per id; blobs reaching zero are deleted by the next collection
+     */
+    public void release(Collection<String> blobIds) {
+        if (blobIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(RELEASE_SQL, blobIds.stream().map(id -> new Object[] {id}).toList());
+    }
+
+    /**
+     * Delete unreferenced blobs in batches, each batch in its own transaction
+     * @return number of blobs deleted
+     */
+    @Scheduled(fixedDelayString = "${securecollab.file-sharing.gc.interval-ms:300000}")
+    public int collectGarbage() {
+        int total = 0;
+        while (true) {
+            Integer deleted = transactionTemplate.execute(status -> {
+                List<String> orphans = jdbcTemplate.queryForList(SELECT_ORPHANS_SQL, String.class, gcBatchSize);
+                int removed = 0;
+                for (String blobId : orphans) {
+                    try {
+                        blobStore.delete(blobId);
+                    } catch (IOException e) {
+                        // Leave the row so the next run retries
+                        logger.warn("Could not delete blob {}: {}", blobId, e.getMessage());
+                        continue;
+                    }
+                    jdbcTemplate.update(DELETE_ROW_SQL, blobId);
+                    removed++;
+                }
+                return removed;
+            });
+            if (deleted == null || deleted == 0) {
+                break;
+            }
+            total += deleted;
+            blobsCollected.increment(deleted);
+            if (deleted < gcBatchSize) {
+                break;
+            }
+        }
+        refreshStats();
+        if (total > 0) {
+            logger.info("Blob GC deleted {} unreferenced blobs", total);
+        }
+        return total;
+    }
+
+    public StorageStats getStorageStats() {
+        refreshStats();
+        return new StorageStats(storedBlobs.get(), physicalBytes.get(), logicalBytes.get());
+    }
+
+    private void refreshStats() {
+        jdbcTemplate.query(STATS_SQL, rs -> {
+            storedBlobs.set(rs.getLong(1));
+            physicalBytes.set(rs.getLong(2));
+            logicalBytes.set(rs.getLong(3));
+        });
+    }
+
+    /**
+     * Storage use across all files; logicalBytes - physicalBytes is what deduplication saves
+     */
+    public record StorageStats(long blobs, long physicalBytes, long logicalBytes) {
+        public long savedBytes() { return logicalBytes - physicalBytes; }
+    }
+}
@@ -0,0 +1,51 @@
+package com.agarg.securecollab.chatservice.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content-addressed store for immutable blobs (encrypted file chunks).
+ * A blob's id is derived from its bytes, so storing the same bytes twice yields the same id
+ * and a single copy. Implementations must make put atomic: a blob is either absent or complete.
+ */
+public interface BlobStore {
+
+    /**
+     * Content address the given bytes would be stored under
+     */
+    String address(ByteBuffer content);
+
+    /**
+     * Store the remaining bytes of the buffer
+     * @return the content address of the blob
+     */
+    default String put(ByteBuffer content) throws IOException {
+        String blobId = address(content);
+        put(blobId, content);
+        return blobId;
+    }
+
+    /**
+     * Store bytes under an address previously computed by {@link #address}; a no-op if present
+     */
+    void put(String blobId, ByteBuffer content) throws IOException;
+
+    /**
+     * Read-only view of a blob; may be memory-mapped
+     */
+    ByteBuffer read(String blobId) throws IOException;
+
+    /**
+     * Copy a blob's bytes to the channel without staging them in heap where the store allows
+     * @return number of bytes transferred
+     */
+    long transferTo(String blobId, WritableByteChannel out) throws IOException;
+
+    boolean exists(String blobId);
+
+    /**
+     * @return true if the blob existed
+     */
+    boolean delete(String blobId) throws IOException;
+}
@@ -0,0 +1,134 @@
+package com.agarg.securecollab.chatservice.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local Filesystem Blob Store
+ * Blobs live at {root}/ab/cd/{sha256-hex}. Writes go to a temp file that is moved into place
+ * atomically, so readers never see a partial blob and concurrent puts of the same bytes converge.
+ * Reads are memory-mapped; {@link #transferTo} uses FileChannel.transferTo, which the OS can
+ * serve without copying through the heap.
+ */
+@Component
+public class LocalFileBlobStore implements BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalFileBlobStore.class);
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path root;
+    private final Path tmp;
+    private final boolean fsync;
+
+    public LocalFileBlobStore(@Value("${securecollab.file-sharing.blob-dir:./data/blobs}") String root,
+                              @Value("${securecollab.file-sharing.fsync:true}") boolean fsync) {
+        this.root = Paths.get(root).toAbsolutePath();
+        this.tmp = this.root.resolve("tmp");
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(tmp);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create blob directory " + this.root, e);
+        }
+        logger.info("Blob store at {}", this.root);
+    }
+
+    @Override
+    public String address(ByteBuffer content) {
+        return sha256(content.duplicate());
+    }
+
+    @Override
+    public void put(String blobId, ByteBuffer content) throws IOException {
+        Path target = pathFor(blobId);
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(tmp, blobId, ".part");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer src = content.duplicate();
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another writer stored the same bytes first
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public ByteBuffer read(String blobId) throws IOException {
+        try (FileChannel channel = FileChannel.open(existing(blobId), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public long transferTo(String blobId, WritableByteChannel out) throws IOException {
+        try (FileChannel channel = FileChannel.open(existing(blobId), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+            return size;
+        }
+    }
+
+    @Override
+    public boolean exists(String blobId) {
+        return Files.exists(pathFor(blobId));
+    }
+
+    @Override
+    public boolean delete(String blobId) throws IOException {
+        return Files.deleteIfExists(pathFor(blobId));
+    }
+
+    private Path existing(String blobId) throws FileNotFoundException {
+        Path path = pathFor(blobId);
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("Blob not found: " + blobId);
+        }
+        return path;
+    }
+
+    private Path pathFor(String blobId) {
+        if (blobId.length() != 64 || !blobId.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException("Invalid blob id: " + blobId);
+        }
+        return root.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2, 4)).resolve(blobId);
+    }
+
+    private static String sha256(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return HEX.formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
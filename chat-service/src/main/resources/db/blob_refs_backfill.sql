@@ -0,0 +1,9 @@
+-- Reference counts for chunks uploaded before blob_refs existed, so deleting those
+-- files lets the blob garbage collector reclaim their chunks.
+-- Sizes are unknown from metadata alone and recorded as 0 (storage stats undercount them).
+-- Run once after deploying, with the blob_refs table created by Hibernate (ddl-auto=update).
+INSERT INTO blob_refs (blob_id, ref_count, size_bytes, created_at)
+SELECT blob_id, COUNT(*), 0, now()
+FROM shared_file_chunks
+GROUP BY blob_id
+ON CONFLICT (blob_id) DO NOTHING;
@@ -0,0 +1,6 @@
+-- Composite index for keyset pagination of pending offline messages:
+--   WHERE recipient_id = ? AND (created_at, id) > (?, ?) ORDER BY created_at, id
+-- and for SELECT COUNT(*) ... WHERE recipient_id = ?.
+-- Hibernate creates it under ddl-auto=update; run this on databases managed by hand.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_offline_recipient_created_id
+    ON offline_messages (recipient_id, created_at, id);
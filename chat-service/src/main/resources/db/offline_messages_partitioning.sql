@@ -0,0 +1,81 @@
+-- Convert offline_messages into a table range-partitioned by expires_at (one partition per day).
+-- Expired data is then removed by OfflineMessagePartitionManager dropping whole partitions
+-- instead of row-by-row deletes. Run once, during a maintenance window, before enabling
+-- securecollab.offline.partitions.enabled.
+--
+-- Partitioned tables require the partition key in every unique constraint, so the primary key
+-- becomes (id, expires_at) and a message id is unique per (recipient_id, message_id, expires_at);
+-- the constraint name matches OfflineMessageEntity so ddl-auto=update finds it.
+--
+-- There is deliberately no DEFAULT partition: DETACH PARTITION ... CONCURRENTLY, which the
+-- manager uses so dropping a day never blocks queue reads and writes, is not allowed while one
+-- exists. Every expiry a message can get falls in a pre-created daily partition.
+-- Installs that applied an earlier version of this script with offline_messages_default should,
+-- once it is verified empty, run:
+--   ALTER TABLE offline_messages DETACH PARTITION offline_messages_default;
+--   DROP TABLE offline_messages_default;
+
+BEGIN;
+
+ALTER TABLE offline_messages RENAME TO offline_messages_legacy;
+-- Index names are schema-wide; free the name for the partitioned table's index
+ALTER INDEX IF EXISTS idx_offline_recipient_created_id RENAME TO idx_offline_legacy_recipient_created_id;
+
+CREATE TABLE offline_messages (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    message_id        VARCHAR(255) NOT NULL,
+    recipient_id      VARCHAR(255) NOT NULL,
+    channel_id        VARCHAR(255),
+    sender_id         VARCHAR(255),
+    encrypted_payload TEXT         NOT NULL,
+    status            VARCHAR(255),
+    created_at        TIMESTAMP(6),
+    expires_at        TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id, expires_at),
+    CONSTRAINT uk_offline_messages_recipient_message_expires UNIQUE (recipient_id, message_id, expires_at)
+) PARTITION BY RANGE (expires_at);
+
+CREATE INDEX idx_offline_recipient_created_id ON offline_messages (recipient_id, created_at, id);
+
+-- Daily partitions for every unexpired day in the existing data
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN
+        SELECT generate_series(CURRENT_DATE, GREATEST(MAX(expires_at)::date, CURRENT_DATE), INTERVAL '1 day')::date
+        FROM offline_messages_legacy
+    LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS offline_messages_p%s PARTITION OF offline_messages '
+                       'FOR VALUES FROM (%L) TO (%L)',
+                       to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+-- A Hibernate-created legacy table holds payloads as large objects (oid); copy their contents
+DO $$
+DECLARE
+    payload TEXT;
+BEGIN
+    SELECT CASE WHEN atttypid = 'oid'::regtype
+                THEN 'convert_from(lo_get(encrypted_payload), ''UTF8'')'
+                ELSE 'encrypted_payload' END
+    INTO payload
+    FROM pg_attribute
+    WHERE attrelid = 'offline_messages_legacy'::regclass AND attname = 'encrypted_payload';
+
+    EXECUTE format('INSERT INTO offline_messages (id, message_id, recipient_id, channel_id, sender_id, '
+                   'encrypted_payload, status, created_at, expires_at) '
+                   'SELECT id, message_id, recipient_id, channel_id, sender_id, %s, status, created_at, expires_at '
+                   'FROM offline_messages_legacy WHERE expires_at >= CURRENT_DATE', payload);
+END $$;
+
+SELECT setval(pg_get_serial_sequence('offline_messages', 'id'),
+              GREATEST((SELECT COALESCE(MAX(id), 0) FROM offline_messages_legacy), 1));
+
+COMMIT;
+
+-- After verifying the data, drop the legacy table. If its encrypted_payload is an oid column,
+-- free the large objects first, since dropping the table leaves them behind:
+--   SELECT lo_unlink(encrypted_payload) FROM offline_messages_legacy;
+--   DROP TABLE offline_messages_legacy;
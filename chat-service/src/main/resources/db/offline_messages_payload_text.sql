@@ -0,0 +1,24 @@
+-- Convert offline_messages.encrypted_payload from a large-object reference (oid, what Hibernate
+-- created for the former @Lob mapping) to text, which OfflineMessageEntity now maps. ddl-auto
+-- never changes an existing column's type, so run this once on unpartitioned databases created
+-- before the change, before deploying it. Tables created by offline_messages_partitioning.sql
+-- already use text and are left alone.
+
+BEGIN;
+
+DO $$
+BEGIN
+    IF (SELECT atttypid FROM pg_attribute
+        WHERE attrelid = 'offline_messages'::regclass AND attname = 'encrypted_payload') = 'oid'::regtype THEN
+        CREATE TEMP TABLE offline_payload_objects ON COMMIT DROP AS
+            SELECT encrypted_payload AS object_id FROM offline_messages WHERE encrypted_payload IS NOT NULL;
+
+        ALTER TABLE offline_messages
+            ALTER COLUMN encrypted_payload TYPE TEXT USING convert_from(lo_get(encrypted_payload), 'UTF8');
+
+        -- The column no longer references them
+        PERFORM lo_unlink(object_id) FROM offline_payload_objects;
+    END IF;
+END $$;
+
+COMMIT;
@@ -0,0 +1,37 @@
+-- Scope offline message ids to their recipient. A channel message is queued once per offline
+-- member under the same message id, so the old unique key on message_id alone made the Redis
+-- tier's spill (INSERT ... ON CONFLICT DO NOTHING) keep only the first recipient's row.
+-- The new key is (recipient_id, message_id, expires_at), matching OfflineMessageEntity and
+-- db/offline_messages_partitioning.sql, for partitioned and unpartitioned tables alike.
+-- Hibernate adds the new constraint under ddl-auto=update but never drops the old one; run this
+-- on every existing database, before deploying the new spill.
+
+BEGIN;
+
+DO $$
+DECLARE
+    old_constraint TEXT;
+BEGIN
+    -- Hibernate's generated name for unique = true on message_id, or the partitioned schema's key
+    FOR old_constraint IN
+        SELECT c.conname
+        FROM pg_constraint c
+        WHERE c.conrelid = 'offline_messages'::regclass
+          AND c.contype = 'u'
+          AND (c.conkey = ARRAY[(SELECT attnum FROM pg_attribute
+                                 WHERE attrelid = c.conrelid AND attname = 'message_id')]
+               OR c.conname = 'uk_offline_messages_message_expires')
+    LOOP
+        EXECUTE format('ALTER TABLE offline_messages DROP CONSTRAINT %I', old_constraint);
+    END LOOP;
+
+    -- Hibernate may already have added it on startup
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint
+                   WHERE conrelid = 'offline_messages'::regclass
+                     AND conname = 'uk_offline_messages_recipient_message_expires') THEN
+        ALTER TABLE offline_messages ADD CONSTRAINT uk_offline_messages_recipient_message_expires
+            UNIQUE (recipient_id, message_id, expires_at);
+    END IF;
+END $$;
+
+COMMIT;
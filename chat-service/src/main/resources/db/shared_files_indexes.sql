@@ -0,0 +1,16 @@
+-- Secondary indexes for file metadata.
+-- Hibernate creates them under ddl-auto=update; run this on databases managed by hand.
+
+-- Channel listing: WHERE channel_id = ? ... ORDER BY uploaded_at DESC, file_id DESC
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shared_files_channel_uploaded
+    ON shared_files (channel_id, uploaded_at, file_id);
+
+-- Per-user access: files shared with a user (the (file_id, user_id) primary key serves per-file checks)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_shared_file_members_user
+    ON shared_file_members (user_id, file_id);
+
+-- Recent downloads of a file, and retention by age
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_file_access_log_file_time
+    ON file_access_log (file_id, access_time, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_file_access_log_time
+    ON file_access_log (access_time);
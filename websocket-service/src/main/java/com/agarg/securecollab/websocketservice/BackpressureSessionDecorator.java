@@ -0,0 +1,266 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded outbound buffer for one session
+ * sendMessage only enqueues; a single drain task per session writes to the transport, so a
+ * slow client never blocks the outbound channel threads. Overflow is handled by the configured
+ * policy, and frames for conflatable destinations replace their queued predecessor.
+ */
+public class BackpressureSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackpressureSessionDecorator.class);
+
+    private static final String MESSAGE_COMMAND = "MESSAGE\n";
+    private static final String DESTINATION_HEADER = "\ndestination:";
+
+    private final OutboundBackpressureProperties properties;
+    private final OutboundBackpressureManager manager;
+    private final Executor drainExecutor;
+
+    // Guarded by itself
+    private final Deque<QueuedFrame> queue = new ArrayDeque<>();
+    // destination -> queued frame, for conflatable destinations only; guarded by queue
+    private final Map<String, QueuedFrame> conflated = new HashMap<>();
+    private long queuedBytes;
+
+    private volatile int depth;
+    private volatile long sendStartTime;
+    private volatile boolean closing;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    public BackpressureSessionDecorator(WebSocketSession delegate,
+                                        OutboundBackpressureProperties properties,
+                                        OutboundBackpressureManager manager,
+                                        Executor drainExecutor) {
+        super(delegate);
+        this.properties = properties;
+        this.manager = manager;
+        this.drainExecutor = drainExecutor;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+        long start = sendStartTime;
+        if (start > 0 && System.currentTimeMillis() - start > properties.getSendTimeLimit().toMillis()) {
+            evict("Send time " + (System.currentTimeMillis() - start) + " ms exceeded the limit");
+        }
+        boolean accepted;
+        synchronized (queue) {
+            accepted = enqueue(message);
+        }
+        if (!accepted) {
+            evict("Outbound buffer limit exceeded");
+        }
+        scheduleDrain();
+    }
+
+    public int getBufferDepth() {
+        return depth;
+    }
+
+    /**
+     * Release queued frames once the session is closed
+     */
+    public void clear() {
+        closing = true;
+        synchronized (queue) {
+            queue.clear();
+            conflated.clear();
+            queuedBytes = 0;
+            depth = 0;
+        }
+    }
+
+    /**
+     * Enqueue under the overflow policy
+     * @return false if the session must be disconnected
+     */
+    private boolean enqueue(WebSocketMessage<?> message) {
+        String destination = destinationOf(message);
+        if (destination != null && manager.isConflatable(destination)) {
+            QueuedFrame queued = conflated.get(destination);
+            if (queued != null) {
+                queuedBytes += message.getPayloadLength() - queued.message.getPayloadLength();
+                queued.message = message;
+                manager.recordCoalesced(1);
+                return true;
+            }
+            QueuedFrame frame = new QueuedFrame(destination, message);
+            conflated.put(destination, frame);
+            add(frame);
+        } else {
+            add(new QueuedFrame(destination, message));
+        }
+
+        if (!isOverLimit()) {
+            return true;
+        }
+        switch (properties.getPolicy()) {
+            case DROP_OLDEST -> {
+                int dropped = 0;
+                while (isOverLimit() && queue.size() > 1) {
+                    remove(queue.pollFirst());
+                    dropped++;
+                }
+                manager.recordDropped(dropped);
+                return true;
+            }
+            case COALESCE -> {
+                manager.recordCoalesced(coalesce());
+                return !isOverLimit();
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Keep only the newest queued frame per destination
+     * @return number of frames removed
+     */
+    private int coalesce() {
+        Set<String> seen = new HashSet<>();
+        int removed = 0;
+        Iterator<QueuedFrame> it = queue.descendingIterator();
+        while (it.hasNext()) {
+            QueuedFrame frame = it.next();
+            if (frame.destination != null && !seen.add(frame.destination)) {
+                it.remove();
+                queuedBytes -= frame.message.getPayloadLength();
+                if (conflated.get(frame.destination) == frame) {
+                    conflated.remove(frame.destination);
+                }
+                removed++;
+            }
+        }
+        depth = queue.size();
+        return removed;
+    }
+
+    private boolean isOverLimit() {
+        return queue.size() > properties.getMaxFrames() || queuedBytes > properties.getMaxBytes().toBytes();
+    }
+
+    private void add(QueuedFrame frame) {
+        queue.addLast(frame);
+        queuedBytes += frame.message.getPayloadLength();
+        depth = queue.size();
+    }
+
+    private void remove(QueuedFrame frame) {
+        queuedBytes -= frame.message.getPayloadLength();
+        if (frame.destination != null && conflated.get(frame.destination) == frame) {
+            conflated.remove(frame.destination);
+        }
+        depth = queue.size();
+    }
+
+    private QueuedFrame poll() {
+        synchronized (queue) {
+            QueuedFrame frame = queue.pollFirst();
+            if (frame != null) {
+                remove(frame);
+            }
+            return frame;
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            drainExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            QueuedFrame frame;
+            while (!closing && (frame = poll()) != null) {
+                sendStartTime = System.currentTimeMillis();
+                getDelegate().sendMessage(frame.message);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Outbound write failed for session {}: {}", getId(), e.getMessage());
+            clear();
+            return;
+        } finally {
+            sendStartTime = 0;
+            draining.set(false);
+        }
+        // A frame may have been queued after the last poll but before draining was reset
+        if (!closing && depth > 0) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Drop the buffer and let the STOMP handler close the session as not reliable
+     */
+    private void evict(String reason) {
+        if (closing) {
+            return;
+        }
+        clear();
+        manager.recordSlowConsumer();
+        logger.warn("Evicting slow consumer session {}: {}", getId(), reason);
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    /**
+     * Destination header of a STOMP MESSAGE frame, or null for other frames
+     */
+    private static String destinationOf(WebSocketMessage<?> message) {
+        String frame;
+        if (message instanceof TextMessage text) {
+            frame = text.getPayload();
+        } else if (message instanceof BinaryMessage binary) {
+            // Headers are ASCII; decoding a bounded prefix is enough
+            ByteBuffer buffer = binary.getPayload().duplicate();
+            byte[] head = new byte[Math.min(buffer.remaining(), 1024)];
+            buffer.get(head);
+            frame = new String(head, StandardCharsets.UTF_8);
+        } else {
+            return null;
+        }
+        if (!frame.startsWith(MESSAGE_COMMAND)) {
+            return null;
+        }
+        int headersEnd = frame.indexOf("\n\n");
+        int start = frame.indexOf(DESTINATION_HEADER, MESSAGE_COMMAND.length() - 1);
+        if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+            return null;
+        }
+        start += DESTINATION_HEADER.length();
+        int end = frame.indexOf('\n', start);
+        return end < 0 ? null : frame.substring(start, end);
+    }
+
+    private static final class QueuedFrame {
+        private final String destination;
+        private WebSocketMessage<?> message;
+
+        QueuedFrame(String destination, WebSocketMessage<?> message) {
+            this.destination = destination;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.agarg.securecollab.websocketservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import java.util.List;
+
+/**
+ * Serialize-once broadcast frames
+ * Encodes a payload to JSON bytes exactly once; the resulting {@link EncodedFrame}
+ * is handed to the broker (or the channel fan-out engine) and the same body
+ * array is reused for every subscriber. With the Redis backplane enabled, frames
+ * are routed through it so they reach subscribers on every node.
+ * User-targeted frames go through the backplane in redis mode and through the relay's
+ * cluster-wide user registry in relay mode (sessions get a Principal on CONNECT, see
+ * {@link StompPrincipalInterceptor}). In simple mode, which is single-node, they are addressed
+ * per local session as /user/{sessionId}/..., which the user destination resolver maps to that
+ * session without a registry lookup.
+ */
+@Component
+public class BroadcastFrameEncoder {
+
+    private static final String USER_DESTINATION_PREFIX = "/user/";
+    public static final String REPLAY_DESTINATION = "/queue/replay";
+
+    private final ObjectMapper objectMapper;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectProvider<RedisBackplane> backplaneProvider;
+    private final ChatMessageCodec chatMessageCodec;
+    private final CompactFormatNegotiator compactFormatNegotiator;
+    private final SessionRegistry sessionRegistry;
+    private final BrokerProperties brokerProperties;
+
+    public BroadcastFrameEncoder(ObjectMapper objectMapper,
+                                 SimpMessagingTemplate messagingTemplate,
+                                 ObjectProvider<RedisBackplane> backplaneProvider,
+                                 ChatMessageCodec chatMessageCodec,
+                                 CompactFormatNegotiator compactFormatNegotiator,
+                                 SessionRegistry sessionRegistry,
+                                 BrokerProperties brokerProperties) {
+        this.objectMapper = objectMapper;
+        this.messagingTemplate = messagingTemplate;
+        this.backplaneProvider = backplaneProvider;
+        this.chatMessageCodec = chatMessageCodec;
+        this.compactFormatNegotiator = compactFormatNegotiator;
+        this.sessionRegistry = sessionRegistry;
+        this.brokerProperties = brokerProperties;
+    }
+
+    /**
+     * Encode a payload once; chat messages also get the compact body while compact sessions exist
+     */
+    public EncodedFrame encode(Object payload) {
+        try {
+            byte[] compact = payload instanceof EnhancedChatController.ChatMessage message
+                    && compactFormatNegotiator.hasCompactSessions()
+                ? chatMessageCodec.encode(message) : null;
+            return new EncodedFrame(objectMapper.writeValueAsBytes(payload), compact);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to encode broadcast payload", e);
+        }
+    }
+
+    /**
+     * Encode and broadcast to a topic destination
+     */
+    public EncodedFrame broadcast(String destination, Object payload) {
+        EncodedFrame frame = encode(payload);
+        broadcast(destination, frame);
+        return frame;
+    }
+
+    /**
+     * Broadcast an already-encoded frame to a topic destination
+     */
+    public void broadcast(String destination, EncodedFrame frame) {
+        RedisBackplane backplane = backplaneProvider.getIfAvailable();
+        if (backplane != null) {
+            backplane.publish(destination, frame);
+        } else {
+            sendToBroker(destination, frame);
+        }
+    }
+
+    /**
+     * Send an already-encoded frame to the configured broker (simple or relay). The broker
+     * copies headers per subscriber but shares the payload array, so nothing is re-encoded.
+     */
+    public void sendToBroker(String destination, EncodedFrame frame) {
+        messagingTemplate.send(destination, toMessage(frame));
+    }
+
+    /**
+     * Encode and send to a user destination, e.g. /queue/messages, on whichever node the user is on
+     */
+    public void sendToUser(String userId, String destination, Object payload) {
+        EncodedFrame frame = encode(payload);
+        RedisBackplane backplane = backplaneProvider.getIfAvailable();
+        if (backplane != null) {
+            backplane.publishToUser(userId, destination, frame);
+        } else if (brokerProperties.getMode() == BrokerProperties.Mode.RELAY) {
+            // Resolved against the shared user registry; sessions on other nodes are reached
+            // through their per-session queues on the external broker
+            messagingTemplate.send(USER_DESTINATION_PREFIX + userId.replace("/", "%2F") + destination, toMessage(frame));
+        } else {
+            sendToUserLocal(userId, destination, frame);
+        }
+    }
+
+    /**
+     * Send an encoded frame to each of a user's sessions on this node
+     */
+    public void sendToUserLocal(String userId, String destination, EncodedFrame frame) {
+        for (String sessionId : sessionRegistry.getSessions(userId)) {
+            messagingTemplate.send(sessionDestination(sessionId, destination), toMessage(frame, sessionId));
+        }
+    }
+
+    /**
+     * Re-send buffered frames to one session, on /user/queue/replay. Frames carry their JSON
+     * body and, for chat messages, the compact body, so the outbound format swap re-encodes
+     * them for whatever this session negotiated.
+     */
+    public void replayToSession(String sessionId, List<ReplayBuffer.Frame> frames) {
+        String destination = sessionDestination(sessionId, REPLAY_DESTINATION);
+        for (ReplayBuffer.Frame frame : frames) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(sessionId);
+            ReplayBuffer.markReplayed(accessor, frame);
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(destination, MessageBuilder.createMessage(frame.payload(), accessor.getMessageHeaders()));
+        }
+    }
+
+    /**
+     * Encode and send a payload to one session
+     */
+    public void sendToSession(String sessionId, String destination, Object payload) {
+        messagingTemplate.send(sessionDestination(sessionId, destination), toMessage(encode(payload), sessionId));
+    }
+
+    /**
+     * User destination that resolves to exactly one session, given the same session id header
+     */
+    private static String sessionDestination(String sessionId, String destination) {
+        return USER_DESTINATION_PREFIX + sessionId + destination;
+    }
+
+    private Message<byte[]> toMessage(EncodedFrame frame) {
+        return toMessage(frame, null);
+    }
+
+    private Message<byte[]> toMessage(EncodedFrame frame, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (frame.compact() != null) {
+            accessor.setHeader(CompactFormatNegotiator.COMPACT_PAYLOAD_HEADER, frame.compact());
+        }
+        // Mutable so the template sets the destination in place rather than copying headers
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(frame.body(), accessor.getMessageHeaders());
+    }
+
+    /**
+     * Pre-encoded JSON body shared by every outbound copy of a broadcast, plus the
+     * compact binary body for sessions that negotiated it (null if not applicable)
+     */
+    public record EncodedFrame(byte[] body, byte[] compact) {
+        public EncodedFrame(byte[] body) { this(body, null); }
+
+        public int size() { return body.length; }
+    }
+}
@@ -0,0 +1,45 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Broker mode for websocket-service (websocket.broker.*)
+ * SIMPLE - in-memory broker, single node only
+ * RELAY  - relay to an external STOMP broker (RabbitMQ STOMP plugin)
+ * REDIS  - local delivery with a Redis pub/sub backplane between nodes
+ */
+@Component
+@ConfigurationProperties(prefix = "websocket.broker")
+public class BrokerProperties {
+
+    public enum Mode { SIMPLE, RELAY, REDIS }
+
+    private Mode mode = Mode.SIMPLE;
+    private Relay relay = new Relay();
+
+    public Mode getMode() { return mode; }
+    public void setMode(Mode mode) { this.mode = mode; }
+
+    public Relay getRelay() { return relay; }
+    public void setRelay(Relay relay) { this.relay = relay; }
+
+    public static class Relay {
+        private String host = "localhost";
+        private int port = 61613;
+        private String login = "guest";
+        private String passcode = "guest";
+
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+
+        public int getPort() { return port; }
+        public void setPort(int port) { this.port = port; }
+
+        public String getLogin() { return login; }
+        public void setLogin(String login) { this.login = login; }
+
+        public String getPasscode() { return passcode; }
+        public void setPasscode(String passcode) { this.passcode = passcode; }
+    }
+}
@@ -0,0 +1,32 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Execution mode for the STOMP client inbound/outbound channels (websocket.executor.*)
+ * PLATFORM - Spring's default bounded platform-thread pools
+ * VIRTUAL  - worker threads are Java 21 virtual threads, so blocking Redis calls in
+ *            handlers park the virtual thread instead of pinning a pool thread
+ */
+@Component
+@ConfigurationProperties(prefix = "websocket.executor")
+public class ChannelExecutorProperties {
+
+    public enum Mode { PLATFORM, VIRTUAL }
+
+    private Mode mode = Mode.PLATFORM;
+    // Upper bound on concurrently running virtual workers per channel
+    private int maxConcurrency = 10_000;
+    // Keep messages from one session in the order they were received / published
+    private boolean preserveOrder = true;
+
+    public Mode getMode() { return mode; }
+    public void setMode(Mode mode) { this.mode = mode; }
+
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+
+    public boolean isPreserveOrder() { return preserveOrder; }
+    public void setPreserveOrder(boolean preserveOrder) { this.preserveOrder = preserveOrder; }
+}
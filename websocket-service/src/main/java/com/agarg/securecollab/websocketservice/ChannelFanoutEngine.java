@@ -0,0 +1,172 @@
+package com.agarg.securecollab.websocketservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Channel fan-out engine
+ * Serializes a channel payload once and writes the same body bytes to every
+ * member session found in {@link ChannelMembershipIndex}, bypassing the
+ * simple broker's scan over all subscriptions.
+ */
+@Component
+public class ChannelFanoutEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelFanoutEngine.class);
+
+    // Upper bounds of the fan-out size buckets meters are tagged with; per-channel tags are unbounded
+    private static final int[] FANOUT_BUCKETS = {1, 10, 100, 1000};
+
+    private final ChannelMembershipIndex membershipIndex;
+    private final MessageChannel clientOutboundChannel;
+    private final BroadcastFrameEncoder frameEncoder;
+    private final BrokerProperties brokerProperties;
+    private final ObjectProvider<RedisBackplane> backplaneProvider;
+    private final MeterRegistry meterRegistry;
+
+    // One set of meters per fan-out size bucket, the last for anything above the largest bound
+    private final ChannelMeters[] bucketMeters;
+
+    public ChannelFanoutEngine(ChannelMembershipIndex membershipIndex,
+                               @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                               BroadcastFrameEncoder frameEncoder,
+                               BrokerProperties brokerProperties,
+                               ObjectProvider<RedisBackplane> backplaneProvider,
+                               MeterRegistry meterRegistry) {
+        this.membershipIndex = membershipIndex;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.frameEncoder = frameEncoder;
+        this.brokerProperties = brokerProperties;
+        this.backplaneProvider = backplaneProvider;
+        this.meterRegistry = meterRegistry;
+        this.bucketMeters = new ChannelMeters[FANOUT_BUCKETS.length + 1];
+        for (int i = 0; i < bucketMeters.length; i++) {
+            bucketMeters[i] = registerMeters(bucketName(i));
+        }
+    }
+
+    /**
+     * Deliver a payload to every session subscribed to /topic/channel/{channelId}
+     */
+    public void publish(String channelId, Object payload) {
+        String destination = ChannelMembershipIndex.CHANNEL_DESTINATION_PREFIX + channelId;
+        if (brokerProperties.getMode() == BrokerProperties.Mode.SIMPLE
+                && !membershipIndex.hasSubscribers(destination)) {
+            return; // nobody to encode for on this node
+        }
+        publish(channelId, frameEncoder.encode(payload));
+    }
+
+    /**
+     * Deliver an already-encoded frame to every member session of a channel
+     */
+    public void publish(String channelId, BroadcastFrameEncoder.EncodedFrame frame) {
+        publish(channelId, ChannelMembershipIndex.CHANNEL_DESTINATION_PREFIX + channelId, frame);
+    }
+
+    /**
+     * Deliver an encoded frame to a channel-scoped destination, e.g. /topic/channel/{id}/typing.
+     * In relay mode the external broker fans out; in redis mode the backplane routes the frame
+     * to every node with members and each delivers locally.
+     */
+    public void publish(String channelId, String destination, BroadcastFrameEncoder.EncodedFrame frame) {
+        RedisBackplane backplane = backplaneProvider.getIfAvailable();
+        if (backplane != null) {
+            backplane.publish(destination, frame);
+        } else if (brokerProperties.getMode() == BrokerProperties.Mode.RELAY) {
+            frameEncoder.sendToBroker(destination, frame);
+        } else {
+            int delivered = deliverLocal(destination, frame);
+            logger.debug("Fan-out to channel {}: {} sessions", channelId, delivered);
+        }
+    }
+
+    /**
+     * Write an encoded frame to every session on this node subscribed to a topic destination
+     * @return number of sessions the frame was handed to
+     */
+    public int deliverLocal(String destination, BroadcastFrameEncoder.EncodedFrame frame) {
+        Set<ChannelMembershipIndex.Subscription> subscriptions = membershipIndex.getSubscriptions(destination);
+        if (subscriptions.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        byte[] body = frame.body();
+
+        int delivered = 0;
+        for (ChannelMembershipIndex.Subscription subscription : subscriptions) {
+            if (clientOutboundChannel.send(toFrame(destination, subscription, body, frame.compact()))) {
+                delivered++;
+            }
+        }
+
+        ChannelMeters meters = bucketMeters[bucketIndex(subscriptions.size())];
+        meters.fanoutLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        meters.framesDelivered.increment(delivered);
+        return delivered;
+    }
+
+    private static int bucketIndex(int fanoutSize) {
+        for (int i = 0; i < FANOUT_BUCKETS.length; i++) {
+            if (fanoutSize <= FANOUT_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return FANOUT_BUCKETS.length;
+    }
+
+    /**
+     * Tag value for a bucket, e.g. "11-100" or "1001+"
+     */
+    private static String bucketName(int index) {
+        if (index == FANOUT_BUCKETS.length) {
+            return (FANOUT_BUCKETS[index - 1] + 1) + "+";
+        }
+        int lower = index == 0 ? 1 : FANOUT_BUCKETS[index - 1] + 1;
+        return lower == FANOUT_BUCKETS[index] ? String.valueOf(lower) : lower + "-" + FANOUT_BUCKETS[index];
+    }
+
+    private Message<byte[]> toFrame(String destination, ChannelMembershipIndex.Subscription subscription,
+                                    byte[] body, byte[] compact) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(subscription.sessionId());
+        accessor.setSubscriptionId(subscription.subscriptionId());
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (compact != null) {
+            accessor.setHeader(CompactFormatNegotiator.COMPACT_PAYLOAD_HEADER, compact);
+        }
+        // Body array is shared across all member frames; only headers differ per session
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    private ChannelMeters registerMeters(String fanoutBucket) {
+        Timer latency = Timer.builder("websocket.channel.fanout.latency")
+            .description("Time to fan a channel message out to all member sessions")
+            .tag("fanout", fanoutBucket)
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Counter frames = Counter.builder("websocket.channel.fanout.frames")
+            .description("Frames delivered to channel member sessions")
+            .tag("fanout", fanoutBucket)
+            .register(meterRegistry);
+        return new ChannelMeters(latency, frames);
+    }
+
+    private record ChannelMeters(Timer fanoutLatency, Counter framesDelivered) { }
+}
@@ -0,0 +1,183 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ChannelMembershipIndex — topic destination -> subscribed sessions on this node.
+ * Fed by STOMP SUBSCRIBE/UNSUBSCRIBE/DISCONNECT frames on the inbound channel
+ * so channel fan-out only touches the members of that channel.
+ */
+@Component
+public class ChannelMembershipIndex implements ChannelInterceptor {
+
+    public static final String TOPIC_DESTINATION_PREFIX = "/topic/";
+    public static final String CHANNEL_DESTINATION_PREFIX = "/topic/channel/";
+
+    // destination -> subscriptions and subscribed sessions on that destination
+    private final Map<String, Members> subscriptionsByDestination = new ConcurrentHashMap<>();
+    // sessionId -> (subscriptionId -> destination), used for unsubscribe and disconnect cleanup
+    private final Map<String, Map<String, String>> destinationsBySession = new ConcurrentHashMap<>();
+
+    private final List<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        Map<String, Object> headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type == null) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        switch (type) {
+            case SUBSCRIBE -> subscribe(sessionId,
+                SimpMessageHeaderAccessor.getSubscriptionId(headers),
+                SimpMessageHeaderAccessor.getDestination(headers));
+            case UNSUBSCRIBE -> unsubscribe(sessionId, SimpMessageHeaderAccessor.getSubscriptionId(headers));
+            case DISCONNECT -> removeSession(sessionId);
+            default -> { }
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        removeSession(event.getSessionId());
+    }
+
+    public void subscribe(String sessionId, String subscriptionId, String destination) {
+        if (sessionId == null || subscriptionId == null || destination == null
+                || !destination.startsWith(TOPIC_DESTINATION_PREFIX)) {
+            return;
+        }
+        destinationsBySession.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+            .put(subscriptionId, destination);
+        boolean[] activated = new boolean[1];
+        // compute() keeps add and empty-set removal atomic per destination
+        subscriptionsByDestination.compute(destination, (k, members) -> {
+            activated[0] = members == null;
+            Members m = members != null ? members : new Members();
+            m.add(new Subscription(sessionId, subscriptionId));
+            return m;
+        });
+        if (activated[0]) {
+            notifyListeners(destination);
+        }
+    }
+
+    public void unsubscribe(String sessionId, String subscriptionId) {
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+        Map<String, String> subscriptions = destinationsBySession.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            removeSubscription(destination, new Subscription(sessionId, subscriptionId));
+        }
+    }
+
+    public void removeSession(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        Map<String, String> subscriptions = destinationsBySession.remove(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        subscriptions.forEach((subscriptionId, destination) ->
+            removeSubscription(destination, new Subscription(sessionId, subscriptionId)));
+    }
+
+    /**
+     * Subscriptions for a channel destination; empty if nobody is subscribed
+     */
+    public Set<Subscription> getSubscriptions(String destination) {
+        Members members = subscriptionsByDestination.get(destination);
+        return members != null ? members.subscriptions : Collections.emptySet();
+    }
+
+    /**
+     * Live, unmodifiable view of the sessions subscribed to a destination; empty if none
+     */
+    public Set<String> getSessions(String destination) {
+        Members members = subscriptionsByDestination.get(destination);
+        return members != null ? members.sessionView : Collections.emptySet();
+    }
+
+    public boolean hasSubscribers(String destination) {
+        return subscriptionsByDestination.containsKey(destination);
+    }
+
+    public int getDestinationCount() {
+        return subscriptionsByDestination.size();
+    }
+
+    /**
+     * Register a listener told when a destination gains its first or loses its last local subscriber
+     */
+    public void addListener(MembershipListener listener) {
+        listeners.add(listener);
+    }
+
+    private void removeSubscription(String destination, Subscription subscription) {
+        boolean[] deactivated = new boolean[1];
+        subscriptionsByDestination.computeIfPresent(destination, (k, members) -> {
+            members.remove(subscription);
+            deactivated[0] = members.subscriptions.isEmpty();
+            return deactivated[0] ? null : members;
+        });
+        if (deactivated[0]) {
+            notifyListeners(destination);
+        }
+    }
+
+    private void notifyListeners(String destination) {
+        for (MembershipListener listener : listeners) {
+            listener.onDestinationChanged(destination);
+        }
+    }
+
+    /**
+     * Callback for per-node subscription routing; implementations should re-check
+     * {@link #hasSubscribers(String)} since notifications may race
+     */
+    public interface MembershipListener {
+        void onDestinationChanged(String destination);
+    }
+
+    public record Subscription(String sessionId, String subscriptionId) { }
+
+    /**
+     * Subscriptions on one destination plus a per-session count, so the session set can be
+     * handed out as a view; only mutated inside compute() on the destination
+     */
+    private static final class Members {
+        final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+        final Map<String, Integer> subscriptionsBySession = new ConcurrentHashMap<>();
+        final Set<String> sessionView = Collections.unmodifiableSet(subscriptionsBySession.keySet());
+
+        void add(Subscription subscription) {
+            if (subscriptions.add(subscription)) {
+                subscriptionsBySession.merge(subscription.sessionId(), 1, Integer::sum);
+            }
+        }
+
+        void remove(Subscription subscription) {
+            if (subscriptions.remove(subscription)) {
+                subscriptionsBySession.computeIfPresent(subscription.sessionId(), (id, n) -> n > 1 ? n - 1 : null);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.stereotype.Component;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Compact binary layout for {@link EnhancedChatController.ChatMessage} (format "compact-v1")
+ * <pre>
+ * u8 version | status | timestamp | messageId senderId senderName recipientId channelId | content | attachments
+ * status     u8: 0 null, ordinal + 1, or 0xFF followed by a string
+ * timestamp  u8 tag: 0 null, 1 local date-time (i64 seconds since 1970-01-01T00:00, varint nanos), 2 string
+ * string     varint: 0 null, otherwise length + 1, then UTF-8 bytes
+ * content    u8 tag: 0 null, 1 raw ciphertext bytes (varint length), 2 string (not valid Base64)
+ * attachments varint: 0 null, otherwise count + 1, then strings
+ * </pre>
+ */
+@Component
+public class ChatMessageCodec {
+
+    public static final String FORMAT = "compact-v1";
+
+    private static final byte VERSION = 1;
+    private static final int STATUS_STRING = 0xFF;
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_LOCAL_DATE_TIME = 1;
+    private static final byte TAG_RAW = 1;
+    private static final byte TAG_STRING = 2;
+
+    /**
+     * Wire status values; ordinals are part of the format, append only
+     */
+    public enum Status { SENT, DELIVERED, READ, RATE_LIMITED, FAILED }
+
+    public byte[] encode(EnhancedChatController.ChatMessage message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(VERSION);
+        writeStatus(out, message.getStatus());
+        writeTimestamp(out, message.getTimestamp());
+        writeString(out, message.getMessageId());
+        writeString(out, message.getSenderId());
+        writeString(out, message.getSenderName());
+        writeString(out, message.getRecipientId());
+        writeString(out, message.getChannelId());
+        writeContent(out, message.getEncryptedContent());
+        List<String> attachments = message.getAttachmentIds();
+        if (attachments == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, attachments.size() + 1);
+            for (String attachment : attachments) {
+                writeString(out, attachment);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public EnhancedChatController.ChatMessage decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported compact message version " + version);
+            }
+            EnhancedChatController.ChatMessage message = new EnhancedChatController.ChatMessage();
+            message.setStatus(readStatus(in));
+            message.setTimestamp(readTimestamp(in));
+            message.setMessageId(readString(in));
+            message.setSenderId(readString(in));
+            message.setSenderName(readString(in));
+            message.setRecipientId(readString(in));
+            message.setChannelId(readString(in));
+            message.setEncryptedContent(readContent(in));
+            int count = readVarInt(in);
+            if (count != 0) {
+                // Each attachment takes at least one byte, so a count past the rest of the frame is bogus
+                int size = checkLength(in, count - 1);
+                List<String> attachments = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    attachments.add(readString(in));
+                }
+                message.setAttachmentIds(attachments);
+            }
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated compact message", e);
+        }
+    }
+
+    private static void writeStatus(ByteArrayOutputStream out, String status) {
+        if (status == null) {
+            out.write(0);
+            return;
+        }
+        try {
+            out.write(Status.valueOf(status).ordinal() + 1);
+        } catch (IllegalArgumentException e) {
+            out.write(STATUS_STRING);
+            writeString(out, status);
+        }
+    }
+
+    private static String readStatus(ByteBuffer in) {
+        int code = in.get() & 0xFF;
+        if (code == 0) {
+            return null;
+        }
+        if (code == STATUS_STRING) {
+            return readString(in);
+        }
+        Status[] statuses = Status.values();
+        if (code > statuses.length) {
+            throw new IllegalArgumentException("Unknown status code " + code);
+        }
+        return statuses[code - 1].name();
+    }
+
+    private static void writeTimestamp(ByteArrayOutputStream out, String timestamp) {
+        if (timestamp == null) {
+            out.write(TAG_NULL);
+            return;
+        }
+        LocalDateTime parsed = null;
+        try {
+            parsed = LocalDateTime.parse(timestamp);
+        } catch (DateTimeParseException e) {
+            // sent as a string below
+        }
+        // Binary only if decoding reproduces the exact text, e.g. not for "...T10:00:00" or ".1"
+        if (parsed == null || !parsed.toString().equals(timestamp)) {
+            out.write(TAG_STRING);
+            writeString(out, timestamp);
+            return;
+        }
+        // Field values only; the offset is a fixed reference, not a zone conversion
+        out.write(TAG_LOCAL_DATE_TIME);
+        writeLong(out, parsed.toEpochSecond(ZoneOffset.UTC));
+        writeVarInt(out, parsed.getNano());
+    }
+
+    private static String readTimestamp(ByteBuffer in) {
+        byte tag = in.get();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_LOCAL_DATE_TIME -> {
+                long seconds = in.getLong();
+                int nanos = readVarInt(in);
+                try {
+                    yield LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC).toString();
+                } catch (DateTimeException e) {
+                    throw new IllegalArgumentException("Invalid timestamp in compact message", e);
+                }
+            }
+            case TAG_STRING -> readString(in);
+            default -> throw new IllegalArgumentException("Unknown timestamp tag " + tag);
+        };
+    }
+
+    private static void writeContent(ByteArrayOutputStream out, String content) {
+        if (content == null) {
+            out.write(TAG_NULL);
+            return;
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getDecoder().decode(content);
+        } catch (IllegalArgumentException e) {
+            out.write(TAG_STRING);
+            writeString(out, content);
+            return;
+        }
+        // Only take the raw form if it round-trips to the same text
+        if (!Base64.getEncoder().encodeToString(raw).equals(content)) {
+            out.write(TAG_STRING);
+            writeString(out, content);
+            return;
+        }
+        out.write(TAG_RAW);
+        writeVarInt(out, raw.length);
+        out.write(raw, 0, raw.length);
+    }
+
+    private static String readContent(ByteBuffer in) {
+        byte tag = in.get();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_RAW -> {
+                byte[] raw = new byte[checkLength(in, readVarInt(in))];
+                in.get(raw);
+                yield Base64.getEncoder().encodeToString(raw);
+            }
+            case TAG_STRING -> readString(in);
+            default -> throw new IllegalArgumentException("Unknown content tag " + tag);
+        };
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[checkLength(in, length - 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checkLength(ByteBuffer in, int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Truncated compact message");
+        }
+        return length;
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Negative length in compact message");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in compact message");
+    }
+}
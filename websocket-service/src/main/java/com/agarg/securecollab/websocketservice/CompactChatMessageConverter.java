@@ -0,0 +1,51 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import java.util.List;
+
+/**
+ * Reads ChatMessage payloads sent in the compact binary format
+ * Applies to SEND frames with content-type application/octet-stream and "chat-format: compact-v1";
+ * JSON frames fall through to the default converters.
+ */
+@Component
+public class CompactChatMessageConverter extends AbstractMessageConverter {
+
+    private final ChatMessageCodec codec;
+
+    public CompactChatMessageConverter(ChatMessageCodec codec) {
+        super(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        this.codec = codec;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EnhancedChatController.ChatMessage.class == clazz;
+    }
+
+    @Override
+    protected boolean canConvertFrom(Message<?> message, Class<?> targetClass) {
+        if (!super.canConvertFrom(message, targetClass)) {
+            return false;
+        }
+        List<String> formats = SimpMessageHeaderAccessor.wrap(message)
+            .getNativeHeader(CompactFormatNegotiator.FORMAT_HEADER);
+        return formats != null && formats.contains(ChatMessageCodec.FORMAT);
+    }
+
+    @Override
+    protected boolean canConvertTo(Object payload, MessageHeaders headers) {
+        return false; // outbound compact frames are produced by BroadcastFrameEncoder
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        return payload instanceof byte[] bytes ? codec.decode(bytes) : null;
+    }
+}
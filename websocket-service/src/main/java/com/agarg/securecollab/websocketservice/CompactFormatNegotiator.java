@@ -0,0 +1,98 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Negotiates the compact binary ChatMessage format per session
+ * Only sessions on the plain WebSocket endpoint can opt in (SockJS frames are text-only);
+ * they do so with a "chat-format: compact-v1" header on STOMP CONNECT. Outbound chat frames
+ * carry the pre-encoded compact body in a header and are swapped in here for those sessions;
+ * every other session keeps the JSON body.
+ */
+@Component
+public class CompactFormatNegotiator implements ChannelInterceptor, HandshakeInterceptor {
+
+    public static final String FORMAT_HEADER = "chat-format";
+    public static final String COMPACT_PAYLOAD_HEADER = "compactPayload";
+
+    private static final String BINARY_CAPABLE_ATTRIBUTE = "binaryCapable";
+
+    // sessions that negotiated the compact format
+    private final Set<String> compactSessions = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        attributes.put(BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.CONNECT) {
+            negotiate(message);
+        } else if (type == SimpMessageType.MESSAGE) {
+            return toCompact(message);
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        compactSessions.remove(event.getSessionId());
+    }
+
+    /**
+     * Whether any session on this node wants compact frames; encoders skip the work otherwise
+     */
+    public boolean hasCompactSessions() {
+        return !compactSessions.isEmpty();
+    }
+
+    private void negotiate(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        List<String> formats = accessor.getNativeHeader(FORMAT_HEADER);
+        if (attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE_ATTRIBUTE))
+                && formats != null && formats.contains(ChatMessageCodec.FORMAT)) {
+            compactSessions.add(accessor.getSessionId());
+        }
+    }
+
+    private Message<?> toCompact(Message<?> message) {
+        Object compact = message.getHeaders().get(COMPACT_PAYLOAD_HEADER);
+        if (!(compact instanceof byte[] body)
+                || !compactSessions.contains(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        // octet-stream so the STOMP handler writes a binary WebSocket frame
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(FORMAT_HEADER, ChatMessageCodec.FORMAT);
+        accessor.removeHeader(COMPACT_PAYLOAD_HEADER);
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,41 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends text frames at or above the threshold as dictionary-deflated binary frames
+ * Sits below {@link BackpressureSessionDecorator}, so compression runs on the drain
+ * thread and only for frames that survive dropping and conflation.
+ */
+public class CompressingSessionDecorator extends WebSocketSessionDecorator {
+
+    private final FrameCompressionManager manager;
+    private final String endpoint;
+
+    public CompressingSessionDecorator(WebSocketSession delegate, FrameCompressionManager manager, String endpoint) {
+        super(delegate);
+        this.manager = manager;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (!(message instanceof TextMessage text)) {
+            super.sendMessage(message); // already binary, e.g. compact chat frames
+            return;
+        }
+        if (text.getPayloadLength() < manager.getThreshold()) {
+            manager.recordSkipped(endpoint);
+            super.sendMessage(message);
+            return;
+        }
+        byte[] frame = text.getPayload().getBytes(StandardCharsets.UTF_8);
+        super.sendMessage(new BinaryMessage(manager.compress(frame, endpoint)));
+    }
+}
@@ -2,7 +2,7 @@ package com.agarg.securecollab.websocketservice;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.*;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import java.util.*;
 import java.time.LocalDateTime;
@@ -17,27 +17,30 @@ public class EnhancedChatController {
     
     private static final Logger logger = LoggerFactory.getLogger(EnhancedChatController.class);
     
-    @Autowired private SimpMessagingTemplate messagingTemplate;
     @Autowired private PresenceService presenceService;
     @Autowired private RateLimitService rateLimitService;
+    @Autowired private ChannelFanoutEngine channelFanoutEngine;
+    @Autowired private BroadcastFrameEncoder frameEncoder;
+    @Autowired private TypingAggregator typingAggregator;
+    @Autowired private SessionRegistry sessionRegistry;
+    @Autowired private ReplayBuffer replayBuffer;
+    @Autowired private OfflineSyncService offlineSyncService;
     // @Autowired private ToxicityDetectionService toxicityService;
     // @Autowired private OfflineMessageQueueService offlineQueueService;
-
-    private final Map<String, String> userConnections = new HashMap<>();
     
     /**
      * Handle user connection
      */
     @MessageMapping("/connect")
-    public void handleUserConnect(@Payload Map<String, String> payload) {
+    public void handleUserConnect(@Payload Map<String, String> payload, SimpMessageHeaderAccessor headerAccessor) {
         String userId = payload.get("userId");
-        String sessionId = payload.get("sessionId");
-        userConnections.put(userId, sessionId);
+        String sessionId = headerAccessor.getSessionId() != null ? headerAccessor.getSessionId() : payload.get("sessionId");
+        sessionRegistry.register(userId, sessionId);
         presenceService.markOnline(userId, sessionId);
         logger.info("User connected: {}", userId);
 
         // Broadcast user online status
-        messagingTemplate.convertAndSend("/topic/users/online", 
+        frameEncoder.broadcast("/topic/users/online", 
             Map.of("userId", userId, "status", "online", "timestamp", LocalDateTime.now()));
     }
     
@@ -45,14 +48,26 @@ public class EnhancedChatController {
      * Handle user disconnect
      */
     @MessageMapping("/disconnect")
-    public void handleUserDisconnect(@Payload Map<String, String> payload) {
-        String userId = payload.get("userId");
-        userConnections.remove(userId);
-        presenceService.markOffline(userId);
+    public void handleUserDisconnect(@Payload Map<String, String> payload, SimpMessageHeaderAccessor headerAccessor) {
+        // The user is whoever owns this session, never a payload field, so a client can only
+        // take itself offline
+        String sessionId = headerAccessor.getSessionId();
+        SessionRegistry.SessionInfo session = sessionRegistry.unregister(sessionId);
+        if (session == null) {
+            logger.debug("Disconnect for unregistered session {}", sessionId);
+            return;
+        }
+        String userId = session.userId();
+        presenceService.markOffline(userId, sessionId);
+        if (sessionRegistry.isConnected(userId)) {
+            // Other devices of this user are still connected
+            logger.info("User device disconnected: {}", userId);
+            return;
+        }
         logger.info("User disconnected: {}", userId);
 
         // Broadcast user offline status
-        messagingTemplate.convertAndSend("/topic/users/offline", 
+        frameEncoder.broadcast("/topic/users/offline", 
             Map.of("userId", userId, "status", "offline", "timestamp", LocalDateTime.now()));
     }
     
@@ -60,15 +75,15 @@ public class EnhancedChatController {
      * Send message with encryption and toxicity detection
      */
     @MessageMapping("/chat.send")
-    @SendTo("/topic/messages")
-    public ChatMessage sendMessage(@Payload ChatMessage message) {
+    public void sendMessage(@Payload ChatMessage message) {
         
         try {
             // Rate limit per sender
-            if (!rateLimitService.tryConsume(message.getSenderId())) {
+            if (!rateLimitService.tryConsume("chat.send", message.getSenderId())) {
                 logger.warn("Rate limit exceeded for user {}", message.getSenderId());
                 message.setStatus("RATE_LIMITED");
-                return message;
+                frameEncoder.broadcast("/topic/messages", message);
+                return;
             }
 
             // Add server-side timestamp
@@ -82,12 +97,12 @@ public class EnhancedChatController {
             // Note: Toxicity detection and encryption should be handled on client-side
             // Server only validates structure and forwards encrypted payloads
 
-            return message;
+            frameEncoder.broadcast("/topic/messages", message);
             
         } catch (Exception e) {
             logger.error("Error processing message", e);
             message.setStatus("FAILED");
-            return message;
+            frameEncoder.broadcast("/topic/messages", message);
         }
     }
     
@@ -99,7 +114,7 @@ public class EnhancedChatController {
         
         try {
             // Rate limit per sender
-            if (!rateLimitService.tryConsume(message.getSenderId())) {
+            if (!rateLimitService.tryConsume("chat.direct", message.getSenderId())) {
                 logger.warn("Rate limit exceeded for user {}", message.getSenderId());
                 return;
             }
@@ -107,7 +122,7 @@ public class EnhancedChatController {
             message.setTimestamp(LocalDateTime.now().toString());
 
             // Send to specific user's queue
-            messagingTemplate.convertAndSendToUser(message.getRecipientId(), "/queue/messages", message);
+            frameEncoder.sendToUser(message.getRecipientId(), "/queue/messages", message);
 
             logger.info("Direct message sent from: {} to: {}", 
                        message.getSenderId(), message.getRecipientId());
@@ -126,9 +141,8 @@ public class EnhancedChatController {
         try {
             message.setTimestamp(LocalDateTime.now().toString());
             
-            // Send to channel topic
-            String channelTopic = "/topic/channel/" + message.getChannelId();
-            messagingTemplate.convertAndSend(channelTopic, message);
+            // Fan out to channel members only (serialized once)
+            channelFanoutEngine.publish(message.getChannelId(), message);
             
             logger.info("Channel message sent to: {}", message.getChannelId());
             
@@ -138,33 +152,80 @@ public class EnhancedChatController {
     }
     
     /**
-     * Broadcast typing indicator
+     * Typing indicator — coalesced per channel and published to /topic/channel/{id}/typing
      */
     @MessageMapping("/chat.typing")
-    @SendTo("/topic/typing")
-    public TypingIndicator handleTypingIndicator(@Payload TypingIndicator indicator) {
-        indicator.setTimestamp(LocalDateTime.now().toString());
-        return indicator;
+    public void handleTypingIndicator(@Payload TypingIndicator indicator) {
+        typingAggregator.record(indicator.getChannelId(), indicator.getUserId(),
+            !Boolean.FALSE.equals(indicator.getTyping()));
     }
     
     /**
      * Handle message reaction (emoji)
      */
     @MessageMapping("/chat.react")
-    @SendTo("/topic/reactions")
-    public MessageReaction handleMessageReaction(@Payload MessageReaction reaction) {
+    public void handleMessageReaction(@Payload MessageReaction reaction) {
         reaction.setTimestamp(LocalDateTime.now().toString());
-        return reaction;
+        frameEncoder.broadcast("/topic/reactions", reaction);
     }
     
     /**
-     * Request for offline message delivery
+     * Request for offline message delivery; pages stream to /user/queue/sync
      */
     @MessageMapping("/sync.offline")
-    public void syncOfflineMessages(@Payload Map<String, String> payload) {
-        String userId = payload.get("userId");
-        // In real implementation, retrieve from OfflineMessageQueueService
-        logger.info("Syncing offline messages for user: {}", userId);
+    public void syncOfflineMessages(@Payload Map<String, String> payload, SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        String userId = sessionRegistry.getUserId(sessionId);
+        if (userId == null) {
+            logger.warn("Offline sync requested by unregistered session {}", sessionId);
+            return;
+        }
+        try {
+            String pageSize = payload.get("pageSize");
+            offlineSyncService.start(userId, sessionId, pageSize != null ? Integer.valueOf(pageSize) : null);
+        } catch (Exception e) {
+            logger.error("Error syncing offline messages for user {}", userId, e);
+        }
+    }
+    
+    /**
+     * Acknowledge an offline sync page; acknowledged messages are deleted and more pages follow
+     */
+    @MessageMapping("/sync.ack")
+    public void acknowledgeSyncPage(@Payload Map<String, String> payload, SimpMessageHeaderAccessor headerAccessor) {
+        try {
+            offlineSyncService.acknowledge(headerAccessor.getSessionId(), payload.get("syncId"),
+                Long.parseLong(payload.get("page")));
+        } catch (Exception e) {
+            logger.error("Error acknowledging offline sync page", e);
+        }
+    }
+    
+    /**
+     * Resume after a reconnect: replay frames the previous session missed after lastSeq.
+     * Replies on /user/queue/replay; resumed=false means the gap is not buffered and the
+     * client should fall back to /app/sync.offline.
+     */
+    @MessageMapping("/session.resume")
+    public void resumeSession(@Payload Map<String, String> payload, SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        String userId = sessionRegistry.getUserId(sessionId);
+        if (userId == null) {
+            return;
+        }
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(payload.getOrDefault("lastSeq", "0"));
+        } catch (NumberFormatException e) {
+            lastSeq = -1;
+        }
+        List<ReplayBuffer.Frame> frames = replayBuffer.resume(userId, payload.get("previousSessionId"), lastSeq);
+        if (frames != null) {
+            frameEncoder.replayToSession(sessionId, frames);
+        }
+        frameEncoder.sendToSession(sessionId, BroadcastFrameEncoder.REPLAY_DESTINATION,
+            Map.of("resumed", frames != null, "replayed", frames != null ? frames.size() : 0));
+        logger.debug("Session resume for user {}: {}", userId, frames != null ? frames.size() + " frames" : "gap");
     }
     
     /**
@@ -177,8 +238,14 @@ public class EnhancedChatController {
             String type = (String) signal.get("type"); // offer, answer, candidate
             String targetUserId = (String) signal.get("targetUserId");
             
+            // Rate limit signaling per call
+            if (!rateLimitService.tryConsume("voice.signal", callId)) {
+                logger.warn("Voice signaling rate limit exceeded for call {}", callId);
+                return;
+            }
+            
             // Forward signaling data to recipient
-            messagingTemplate.convertAndSendToUser(targetUserId, "/queue/voice-signal", signal);
+            frameEncoder.sendToUser(targetUserId, "/queue/voice-signal", signal);
             
             logger.debug("Voice signal forwarded: callId={}, type={}", callId, type);
             
@@ -233,6 +300,7 @@ public class EnhancedChatController {
         private String userId;
         private String channelId;
         private String timestamp;
+        private Boolean typing; // null means typing started/continued
         
         public String getUserId() { return userId; }
         public void setUserId(String userId) { this.userId = userId; }
@@ -242,6 +310,9 @@ public class EnhancedChatController {
         
         public String getTimestamp() { return timestamp; }
         public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
+        
+        public Boolean getTyping() { return typing; }
+        public void setTyping(Boolean typing) { this.typing = typing; }
     }
     
     public static class MessageReaction {
@@ -0,0 +1,47 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Fixed window counter: INCR + PEXPIRE in one script.
+ * One key per user per window; allows up to 2x limit across a window edge.
+ */
+@Component
+public class FixedWindowRateLimitStrategy implements RateLimitStrategy {
+
+    private static final String KEY_PREFIX = "rate:fw:";
+
+    // KEYS[1] = counter key, ARGV[1] = limit, ARGV[2] = window ms
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>(
+        "local window = tonumber(ARGV[2]) " +
+        "local now = redis.call('TIME') " +
+        "local nowMs = now[1] * 1000 + math.floor(now[2] / 1000) " +
+        "local key = KEYS[1] .. ':' .. math.floor(nowMs / window) " +
+        "local count = redis.call('INCR', key) " +
+        "if count == 1 then redis.call('PEXPIRE', key, window) end " +
+        "if count <= tonumber(ARGV[1]) then return 1 end " +
+        "return 0", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public FixedWindowRateLimitStrategy(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String name() {
+        return "fixed-window";
+    }
+
+    @Override
+    public boolean tryConsume(String key, int limit, Duration window) {
+        Long allowed = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + key),
+            Integer.toString(limit), Long.toString(window.toMillis()));
+        return allowed != null && allowed == 1L;
+    }
+}
@@ -0,0 +1,187 @@
+package com.agarg.securecollab.websocketservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared-dictionary frame compression
+ * Clients opt in on the plain WebSocket endpoint with ?compression=deflate-dict-v1 on the
+ * handshake URL. Outbound frames at or above the size threshold are zlib-deflated with the
+ * pre-trained dictionary (whose Adler-32 id is in the zlib header) and sent as binary frames;
+ * smaller frames stay text. Deflaters are pooled rather than held per session; the pool keeps
+ * at most pool-size idle instances and end()s the rest, so native zlib memory shrinks back
+ * after a burst instead of staying at peak concurrency.
+ */
+@Component
+public class FrameCompressionManager implements WebSocketHandlerDecoratorFactory, HandshakeInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameCompressionManager.class);
+
+    public static final String ENCODING = "deflate-dict-v1";
+
+    private static final String COMPRESSION_PARAM = "compression";
+    private static final String ENDPOINT_ATTRIBUTE = "compressionEndpoint";
+
+    private final FrameCompressionProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final BlockingQueue<Deflater> deflaters;
+    private byte[] dictionary;
+    private volatile boolean closed;
+
+    // endpoint path -> meters
+    private final Map<String, EndpointMeters> endpointMeters = new ConcurrentHashMap<>();
+
+    public FrameCompressionManager(FrameCompressionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.deflaters = new ArrayBlockingQueue<>(Math.max(1, properties.getPoolSize()));
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!properties.isEnabled() || properties.getDictionary() == null) {
+            return;
+        }
+        try (InputStream in = properties.getDictionary().getInputStream()) {
+            dictionary = in.readAllBytes();
+        }
+        Adler32 id = new Adler32();
+        id.update(dictionary);
+        logger.info("Frame compression dictionary loaded: {} bytes, id {}", dictionary.length,
+            Long.toHexString(id.getValue()));
+    }
+
+    /**
+     * Free the native memory of pooled deflaters; ones in use are ended when returned
+     */
+    @PreDestroy
+    public void close() {
+        closed = true;
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String requested = UriComponentsBuilder.fromUri(request.getURI()).build()
+            .getQueryParams().getFirst(COMPRESSION_PARAM);
+        if (dictionary != null && ENCODING.equals(requested)) {
+            attributes.put(ENDPOINT_ATTRIBUTE, request.getURI().getPath());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                Object endpoint = session.getAttributes().get(ENDPOINT_ATTRIBUTE);
+                super.afterConnectionEstablished(endpoint instanceof String path
+                    ? new CompressingSessionDecorator(session, FrameCompressionManager.this, path)
+                    : session);
+            }
+        };
+    }
+
+    int getThreshold() {
+        return (int) properties.getThreshold().toBytes();
+    }
+
+    /**
+     * Deflate a frame with the shared dictionary
+     */
+    byte[] compress(byte[] frame, String endpoint) {
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(properties.getLevel());
+        }
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(frame);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, frame.length + 64)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            EndpointMeters meters = meters(endpoint);
+            meters.compressTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meters.ratio.record((double) length / frame.length);
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            release(deflater);
+        }
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (closed || !deflaters.offer(deflater)) {
+            deflater.end();
+        } else if (closed && deflaters.remove(deflater)) {
+            // close() drained the pool while we were offering
+            deflater.end();
+        }
+    }
+
+    void recordSkipped(String endpoint) {
+        meters(endpoint).skipped.increment();
+    }
+
+    private EndpointMeters meters(String endpoint) {
+        return endpointMeters.computeIfAbsent(endpoint, e -> new EndpointMeters(
+            Timer.builder("websocket.compression.time")
+                .description("CPU time spent deflating an outbound frame")
+                .tag("endpoint", e)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry),
+            DistributionSummary.builder("websocket.compression.ratio")
+                .description("Compressed size / original size of outbound frames")
+                .tag("endpoint", e)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry),
+            Counter.builder("websocket.compression.skipped")
+                .description("Frames sent uncompressed because they were below the threshold")
+                .tag("endpoint", e)
+                .register(meterRegistry)));
+    }
+
+    private record EndpointMeters(Timer compressTime, DistributionSummary ratio, Counter skipped) { }
+}
@@ -0,0 +1,38 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Shared-dictionary frame compression (websocket.compression.*)
+ */
+@Component
+@ConfigurationProperties(prefix = "websocket.compression")
+public class FrameCompressionProperties {
+
+    private boolean enabled = true;
+    // Frames smaller than this are sent uncompressed
+    private DataSize threshold = DataSize.ofBytes(256);
+    private int level = 6;
+    // Idle deflaters kept for reuse; each holds native zlib memory until end()
+    private int poolSize = 16;
+    // Pre-trained deflate dictionary of common STOMP headers and chat JSON structure
+    private Resource dictionary;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public DataSize getThreshold() { return threshold; }
+    public void setThreshold(DataSize threshold) { this.threshold = threshold; }
+
+    public int getLevel() { return level; }
+    public void setLevel(int level) { this.level = level; }
+
+    public int getPoolSize() { return poolSize; }
+    public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+
+    public Resource getDictionary() { return dictionary; }
+    public void setDictionary(Resource dictionary) { this.dictionary = dictionary; }
+}
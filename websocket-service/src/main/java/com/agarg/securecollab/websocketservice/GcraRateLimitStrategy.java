@@ -0,0 +1,49 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Generic Cell Rate Algorithm: stores only the theoretical arrival time (TAT) per user.
+ * Emission interval is window / limit with a burst tolerance of one full window.
+ */
+@Component
+public class GcraRateLimitStrategy implements RateLimitStrategy {
+
+    private static final String KEY_PREFIX = "rate:gcra:";
+
+    // KEYS[1] = TAT key, ARGV[1] = limit, ARGV[2] = window ms
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>(
+        "local window = tonumber(ARGV[2]) " +
+        "local interval = window / tonumber(ARGV[1]) " +
+        "local now = redis.call('TIME') " +
+        "local nowMs = now[1] * 1000 + now[2] / 1000 " +
+        "local tat = tonumber(redis.call('GET', KEYS[1])) or nowMs " +
+        "if tat < nowMs then tat = nowMs end " +
+        "local newTat = tat + interval " +
+        "if newTat - window > nowMs then return 0 end " +
+        "redis.call('SET', KEYS[1], string.format('%.3f', newTat), 'PX', math.ceil(newTat - nowMs)) " +
+        "return 1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public GcraRateLimitStrategy(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String name() {
+        return "gcra";
+    }
+
+    @Override
+    public boolean tryConsume(String key, int limit, Duration window) {
+        Long allowed = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + key),
+            Integer.toString(limit), Long.toString(window.toMillis()));
+        return allowed != null && allowed == 1L;
+    }
+}
@@ -0,0 +1,221 @@
+package com.agarg.securecollab.websocketservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import jakarta.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offline Sync Service
+ * Streams a user's pending offline messages to /user/queue/sync in bounded pages read from
+ * chat-service with keyset pagination. At most websocket.offline-sync.window pages are
+ * unacknowledged at a time; a page is deleted from the offline store only after the client
+ * acknowledges it with /app/sync.ack, so nothing is lost if the socket drops mid-sync.
+ * Calls to chat-service run on virtual threads, never on the STOMP inbound thread; the steps
+ * of one sync are chained so they run one at a time and in order, without holding a lock
+ * across I/O. Requests carry the shared service token.
+ */
+@Service
+public class OfflineSyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineSyncService.class);
+
+    public static final String SYNC_DESTINATION = "/queue/sync";
+
+    private static final String SERVICE_TOKEN_HEADER = "X-Service-Token";
+
+    private final RestClient chatClient;
+    private final BroadcastFrameEncoder frameEncoder;
+    private final int maxPageSize;
+    private final int window;
+    private final Counter pagesSent;
+    private final Counter messagesAcknowledged;
+    private final ExecutorService executor =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("offline-sync-", 0).factory());
+
+    // sessionId -> sync in progress on that session
+    private final Map<String, SyncState> syncs = new ConcurrentHashMap<>();
+
+    public OfflineSyncService(RestClient.Builder restClientBuilder,
+                              BroadcastFrameEncoder frameEncoder,
+                              MeterRegistry meterRegistry,
+                              @Value("${websocket.offline-sync.chat-service-url:http://localhost:8081}") String chatServiceUrl,
+                              @Value("${websocket.offline-sync.service-token:}") String serviceToken,
+                              @Value("${websocket.offline-sync.page-size:100}") int maxPageSize,
+                              @Value("${websocket.offline-sync.window:2}") int window) {
+        if (serviceToken.isEmpty()) {
+            logger.warn("websocket.offline-sync.service-token is not set; chat-service will reject offline sync calls");
+        }
+        this.chatClient = restClientBuilder.baseUrl(chatServiceUrl)
+            .defaultHeader(SERVICE_TOKEN_HEADER, serviceToken)
+            .build();
+        this.frameEncoder = frameEncoder;
+        this.maxPageSize = maxPageSize;
+        this.window = Math.max(1, window);
+        this.pagesSent = Counter.builder("websocket.sync.pages")
+            .description("Offline sync pages sent to clients")
+            .register(meterRegistry);
+        this.messagesAcknowledged = Counter.builder("websocket.sync.acknowledged")
+            .description("Offline messages acknowledged by clients and deleted")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Start (or restart) a sync for a session; sends up to the window of pages
+     */
+    public void start(String userId, String sessionId, Integer requestedPageSize) {
+        int pageSize = requestedPageSize != null && requestedPageSize > 0
+            ? Math.min(requestedPageSize, maxPageSize) : maxPageSize;
+        SyncState state = new SyncState(UUID.randomUUID().toString(), userId, pageSize);
+        syncs.put(sessionId, state);
+        logger.info("Starting offline sync {} for user {} (page size {})", state.syncId, userId, pageSize);
+        submit(state, () -> fill(state, sessionId));
+    }
+
+    /**
+     * Cumulative acknowledgement: every page up to and including pageNumber was processed
+     */
+    public void acknowledge(String sessionId, String syncId, long pageNumber) {
+        SyncState state = syncs.get(sessionId);
+        if (state == null || !state.syncId.equals(syncId)) {
+            return;
+        }
+        submit(state, () -> {
+            List<Long> ids = new ArrayList<>();
+            List<String> streamIds = new ArrayList<>();
+            while (!state.inFlight.isEmpty() && state.inFlight.peekFirst().number <= pageNumber) {
+                InFlightPage page = state.inFlight.pollFirst();
+                ids.addAll(page.ids);
+                streamIds.addAll(page.streamIds);
+            }
+            if (!ids.isEmpty() || !streamIds.isEmpty()) {
+                chatClient.post()
+                    .uri("/api/chat/pending-messages/{userId}/ack", state.userId)
+                    .body(Map.of("ids", ids, "streamIds", streamIds))
+                    .retrieve()
+                    .toBodilessEntity();
+                messagesAcknowledged.increment(ids.size() + streamIds.size());
+            }
+            if (state.exhausted && state.inFlight.isEmpty()) {
+                syncs.remove(sessionId, state);
+                logger.info("Offline sync {} complete for user {}", state.syncId, state.userId);
+                return;
+            }
+            fill(state, sessionId);
+        });
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        // Unacknowledged pages stay in the store and are sent again on the next sync
+        syncs.remove(event.getSessionId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Queue a step of a sync behind its previous steps. Only the chaining is locked; the step
+     * itself, and its HTTP calls, run on the executor. A failed step is logged and the chain
+     * carries on, so a later acknowledgement or restart can recover.
+     */
+    private void submit(SyncState state, Runnable step) {
+        synchronized (state) {
+            state.tail = state.tail.thenRunAsync(() -> {
+                try {
+                    step.run();
+                } catch (Exception e) {
+                    logger.warn("Offline sync {} step failed for user {}: {}", state.syncId, state.userId, e.getMessage());
+                }
+            }, executor);
+        }
+    }
+
+    private void fill(SyncState state, String sessionId) {
+        // Stop once the session is gone or a newer sync replaced this one
+        while (!state.exhausted && state.inFlight.size() < window && syncs.get(sessionId) == state) {
+            PendingPage page = chatClient.get()
+                .uri(uri -> {
+                    uri.path("/api/chat/pending-messages/{userId}/page").queryParam("limit", state.pageSize);
+                    if (state.afterCreatedAt != null) {
+                        uri.queryParam("afterCreatedAt", state.afterCreatedAt).queryParam("afterId", state.afterId);
+                    }
+                    if (state.afterStreamId != null) {
+                        uri.queryParam("afterStreamId", state.afterStreamId);
+                    }
+                    return uri.build(state.userId);
+                })
+                .retrieve()
+                .body(PendingPage.class);
+            if (page == null) {
+                state.exhausted = true;
+                break;
+            }
+            state.afterCreatedAt = page.nextAfterCreatedAt();
+            state.afterId = page.nextAfterId();
+            state.afterStreamId = page.nextAfterStreamId();
+            state.exhausted = !page.hasMore();
+
+            long number = ++state.pageCount;
+            List<Long> ids = new ArrayList<>(page.messages().size());
+            List<String> streamIds = new ArrayList<>();
+            for (PendingMessage message : page.messages()) {
+                if (message.streamId() != null) {
+                    streamIds.add(message.streamId());
+                } else {
+                    ids.add(message.id());
+                }
+            }
+            state.inFlight.addLast(new InFlightPage(number, ids, streamIds));
+            frameEncoder.sendToSession(sessionId, SYNC_DESTINATION,
+                new SyncPage(state.syncId, number, page.messages(), state.exhausted));
+            pagesSent.increment();
+        }
+    }
+
+    public record PendingMessage(Long id, String streamId, String messageId, String channelId, String senderId,
+                                 String encryptedContent, String createdAt) { }
+
+    public record PendingPage(List<PendingMessage> messages, String nextAfterCreatedAt,
+                              Long nextAfterId, String nextAfterStreamId, boolean hasMore) { }
+
+    /**
+     * Frame sent on /user/queue/sync; acknowledge with {syncId, page} on /app/sync.ack
+     */
+    public record SyncPage(String syncId, long page, List<PendingMessage> messages, boolean last) { }
+
+    private record InFlightPage(long number, List<Long> ids, List<String> streamIds) { }
+
+    private static class SyncState {
+        private final String syncId;
+        private final String userId;
+        private final int pageSize;
+        private final Deque<InFlightPage> inFlight = new ArrayDeque<>();
+        private String afterCreatedAt;
+        private Long afterId;
+        private String afterStreamId;
+        private long pageCount;
+        private boolean exhausted;
+        // Last queued step; guarded by the state's monitor
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        SyncState(String syncId, String userId, int pageSize) {
+            this.syncId = syncId;
+            this.userId = userId;
+            this.pageSize = pageSize;
+        }
+    }
+}
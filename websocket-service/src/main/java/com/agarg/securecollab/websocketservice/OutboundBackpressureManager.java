@@ -0,0 +1,127 @@
+package com.agarg.securecollab.websocketservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Outbound backpressure
+ * Wraps every WebSocket session in a {@link BackpressureSessionDecorator} so each session
+ * has a bounded send buffer with the configured overflow policy and conflation of snapshot
+ * streams such as typing. Exports buffer depth and eviction counts.
+ */
+@Component
+public class OutboundBackpressureManager implements WebSocketHandlerDecoratorFactory {
+
+    private final OutboundBackpressureProperties properties;
+    private final AntPathMatcher destinationMatcher = new AntPathMatcher();
+    // Per-session drain tasks block on slow sockets, so each runs on its own virtual thread
+    private final ExecutorService drainExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // sessionId -> decorated session
+    private final Map<String, BackpressureSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    private final Counter droppedFrames;
+    private final Counter coalescedFrames;
+    private final Counter evictedSessions;
+
+    public OutboundBackpressureManager(OutboundBackpressureProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.droppedFrames = Counter.builder("websocket.outbound.evicted")
+            .description("Queued outbound frames evicted because a session buffer overflowed")
+            .tag("reason", "dropped")
+            .register(meterRegistry);
+        this.coalescedFrames = Counter.builder("websocket.outbound.evicted")
+            .description("Queued outbound frames evicted because a session buffer overflowed")
+            .tag("reason", "coalesced")
+            .register(meterRegistry);
+        this.evictedSessions = Counter.builder("websocket.outbound.slow.consumers")
+            .description("Sessions disconnected as slow consumers")
+            .register(meterRegistry);
+        Gauge.builder("websocket.outbound.buffer.depth", this, OutboundBackpressureManager::totalDepth)
+            .description("Frames queued across all session send buffers")
+            .register(meterRegistry);
+        Gauge.builder("websocket.outbound.buffer.max.depth", this, OutboundBackpressureManager::maxDepth)
+            .description("Deepest single session send buffer")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BackpressureSessionDecorator decorated = new BackpressureSessionDecorator(session, properties,
+                    OutboundBackpressureManager.this, drainExecutor);
+                sessions.put(session.getId(), decorated);
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                BackpressureSessionDecorator decorated = sessions.remove(session.getId());
+                if (decorated != null) {
+                    decorated.clear();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainExecutor.shutdownNow();
+    }
+
+    /**
+     * Whether frames to a destination are snapshots that may be conflated
+     */
+    boolean isConflatable(String destination) {
+        for (String pattern : properties.getConflate()) {
+            if (destinationMatcher.match(pattern, destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void recordDropped(int frames) {
+        droppedFrames.increment(frames);
+    }
+
+    void recordCoalesced(int frames) {
+        coalescedFrames.increment(frames);
+    }
+
+    void recordSlowConsumer() {
+        evictedSessions.increment();
+    }
+
+    private double totalDepth() {
+        long depth = 0;
+        for (BackpressureSessionDecorator session : sessions.values()) {
+            depth += session.getBufferDepth();
+        }
+        return depth;
+    }
+
+    private double maxDepth() {
+        int max = 0;
+        for (BackpressureSessionDecorator session : sessions.values()) {
+            max = Math.max(max, session.getBufferDepth());
+        }
+        return max;
+    }
+}
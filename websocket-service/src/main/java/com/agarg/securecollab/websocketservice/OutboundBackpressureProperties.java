@@ -0,0 +1,44 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-session outbound buffering (websocket.outbound.*)
+ * DROP_OLDEST - discard the oldest queued frames to make room
+ * COALESCE    - collapse the queue to the newest frame per destination, then disconnect if still full
+ * DISCONNECT  - close the session as a slow consumer
+ */
+@Component
+@ConfigurationProperties(prefix = "websocket.outbound")
+public class OutboundBackpressureProperties {
+
+    public enum OverflowPolicy { DROP_OLDEST, COALESCE, DISCONNECT }
+
+    private OverflowPolicy policy = OverflowPolicy.DROP_OLDEST;
+    private int maxFrames = 1000;
+    private DataSize maxBytes = DataSize.ofKilobytes(512);
+    // A single write blocked longer than this marks the session a slow consumer
+    private Duration sendTimeLimit = Duration.ofSeconds(10);
+    // Destinations whose frames are full snapshots; only the newest queued frame is kept
+    private List<String> conflate = new ArrayList<>(List.of("/topic/channel/*/typing"));
+
+    public OverflowPolicy getPolicy() { return policy; }
+    public void setPolicy(OverflowPolicy policy) { this.policy = policy; }
+
+    public int getMaxFrames() { return maxFrames; }
+    public void setMaxFrames(int maxFrames) { this.maxFrames = maxFrames; }
+
+    public DataSize getMaxBytes() { return maxBytes; }
+    public void setMaxBytes(DataSize maxBytes) { this.maxBytes = maxBytes; }
+
+    public Duration getSendTimeLimit() { return sendTimeLimit; }
+    public void setSendTimeLimit(Duration sendTimeLimit) { this.sendTimeLimit = sendTimeLimit; }
+
+    public List<String> getConflate() { return conflate; }
+    public void setConflate(List<String> conflate) { this.conflate = conflate; }
+}
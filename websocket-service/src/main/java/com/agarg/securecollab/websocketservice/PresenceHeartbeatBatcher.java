@@ -0,0 +1,154 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PresenceHeartbeatBatcher — tracks the sessions live on this node and writes their
+ * presence keys in one pipelined flush per interval: newly connected users on every
+ * flush, and a TTL renewal for all live users once per heartbeat interval.
+ * A user may have several sessions on this node; the key holds the newest one and is only
+ * deleted when the last of them closes. A user can go offline while a flush is in flight;
+ * the flush then re-checks its batch and removes any key it re-created for a user that is
+ * no longer live.
+ */
+@Component
+public class PresenceHeartbeatBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceHeartbeatBatcher.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final long heartbeatIntervalMs;
+
+    // userId -> that user's sessions on this node, oldest first; lists are immutable and replaced
+    private final Map<String, List<String>> live = new ConcurrentHashMap<>();
+    // userId -> session to write on the next flush
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+    // userId -> session id this node last wrote to the user's presence key
+    private final Map<String, String> written = new ConcurrentHashMap<>();
+    private volatile long lastRenewal = System.currentTimeMillis();
+
+    public PresenceHeartbeatBatcher(RedisTemplate<String, String> redisTemplate,
+                                    @Value("${websocket.presence.heartbeat-interval-ms:60000}") long heartbeatIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+    }
+
+    public void register(String userId, String sessionId) {
+        live.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                return List.of(sessionId);
+            }
+            if (sessions.contains(sessionId)) {
+                return sessions;
+            }
+            List<String> next = new ArrayList<>(sessions.size() + 1);
+            next.addAll(sessions);
+            next.add(sessionId);
+            return List.copyOf(next);
+        });
+        pending.put(userId, sessionId);
+    }
+
+    /**
+     * Unregister one session of a user. While other sessions of the user remain on this node
+     * the key is re-pointed at the newest of them on the next flush.
+     * @return session ids the presence key may still hold and should be compare-and-deleted
+     *         with, empty if the user still has sessions here
+     */
+    public List<String> unregister(String userId, String sessionId) {
+        List<String> remaining = live.computeIfPresent(userId, (id, sessions) -> {
+            if (!sessions.contains(sessionId)) {
+                return sessions;
+            }
+            List<String> next = new ArrayList<>(sessions);
+            next.remove(sessionId);
+            return next.isEmpty() ? null : List.copyOf(next);
+        });
+        if (remaining != null) {
+            pending.put(userId, remaining.get(remaining.size() - 1));
+            return List.of();
+        }
+        pending.remove(userId);
+        String last = written.remove(userId);
+        return last == null || last.equals(sessionId) ? List.of(sessionId) : List.of(sessionId, last);
+    }
+
+    public int getLiveCount() {
+        return live.size();
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.presence.flush-interval-ms:500}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        boolean renewAll = now - lastRenewal >= heartbeatIntervalMs;
+
+        Map<String, String> batch = new HashMap<>();
+        for (String userId : pending.keySet()) {
+            String sessionId = pending.remove(userId);
+            if (sessionId != null) {
+                batch.put(userId, sessionId);
+            }
+        }
+        if (renewAll) {
+            live.forEach((userId, sessions) -> batch.put(userId, sessions.get(sessions.size() - 1)));
+            lastRenewal = now;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            write(batch, PresenceService.PRESENCE_TTL);
+            logger.debug("Presence flush: {} keys (renewal={})", batch.size(), renewAll);
+            recordWritten(batch);
+        } catch (Exception e) {
+            // Re-queue so the next flush retries; live entries are renewed anyway
+            batch.forEach((userId, sessionId) -> {
+                List<String> sessions = live.get(userId);
+                if (sessions != null && sessions.contains(sessionId)) {
+                    pending.putIfAbsent(userId, sessionId);
+                }
+            });
+            logger.warn("Presence flush of {} keys failed: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Remember what was written, and undo writes for users whose last session closed after the
+     * batch was taken. markOffline unregisters before deleting, so either its delete follows
+     * our write or the user is seen as gone here; compare-and-delete leaves a newer session's
+     * key alone. A closed session of a user who is still live was re-queued by unregister and
+     * is overwritten by the next flush.
+     */
+    private void recordWritten(Map<String, String> batch) {
+        batch.forEach((userId, sessionId) -> {
+            if (live.containsKey(userId)) {
+                written.put(userId, sessionId);
+            } else {
+                redisTemplate.execute(PresenceService.COMPARE_AND_DELETE,
+                    List.of(PresenceService.PRESENCE_KEY_PREFIX + userId), sessionId);
+            }
+        });
+    }
+
+    private void write(Map<String, String> batch, Duration ttl) {
+        long ttlMs = ttl.toMillis();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            batch.forEach((userId, sessionId) -> connection.stringCommands().pSetEx(
+                (PresenceService.PRESENCE_KEY_PREFIX + userId).getBytes(StandardCharsets.UTF_8),
+                ttlMs,
+                sessionId.getBytes(StandardCharsets.UTF_8)));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package com.agarg.securecollab.websocketservice;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PresenceNearCache — bounded in-process cache (Caffeine, W-TinyLFU) of presence:* values.
+ * Entries are invalidated by Redis keyspace notifications, with expire-after-write as a
+ * fallback when notifications are lost or disabled. Offline users are cached as well.
+ */
+@Component
+public class PresenceNearCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceNearCache.class);
+
+    // Cached marker for "no presence key"
+    private static final String OFFLINE = "";
+    // Bound on writes awaiting a notification, in case notifications are disabled server-side
+    private static final int MAX_TRACKED_WRITES = 10_000;
+
+    private final Cache<String, String> cache;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final boolean configureNotifications;
+
+    // userId -> nanoTime of a write made by this node, awaiting its keyspace notification
+    private final Map<String, Long> localWrites = new ConcurrentHashMap<>();
+
+    private final Timer invalidationLag;
+    private final Timer entryAgeAtInvalidation;
+    private final Counter invalidations;
+
+    public PresenceNearCache(RedisMessageListenerContainer listenerContainer,
+                             RedisTemplate<String, String> redisTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${websocket.presence.near-cache.max-size:100000}") long maxSize,
+                             @Value("${websocket.presence.near-cache.ttl:30s}") Duration ttl,
+                             @Value("${websocket.presence.near-cache.configure-notifications:true}") boolean configureNotifications) {
+        this.listenerContainer = listenerContainer;
+        this.redisTemplate = redisTemplate;
+        this.configureNotifications = configureNotifications;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "presence");
+        this.invalidationLag = Timer.builder("websocket.presence.nearcache.invalidation.lag")
+            .description("Delay between a presence write on this node and its keyspace notification")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.entryAgeAtInvalidation = Timer.builder("websocket.presence.nearcache.staleness")
+            .description("Age of a cached presence entry when it was invalidated")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.invalidations = Counter.builder("websocket.presence.nearcache.invalidations")
+            .description("Near-cache entries invalidated by keyspace notifications")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (configureNotifications) {
+            try {
+                // K = keyspace channel, g = DEL/EXPIRE, $ = SET, x = expired
+                redisTemplate.execute((RedisCallback<Object>) connection -> {
+                    connection.serverCommands().setConfig("notify-keyspace-events", "Kg$x");
+                    return null;
+                });
+            } catch (Exception e) {
+                logger.warn("Could not enable keyspace notifications, relying on TTL: {}", e.getMessage());
+            }
+        }
+        listenerContainer.addMessageListener(this,
+            new PatternTopic("__keyspace@*__:" + PresenceService.PRESENCE_KEY_PREFIX + "*"));
+    }
+
+    /**
+     * Session id for a user (null if offline), loading from Redis on a miss
+     */
+    public String get(String userId, Function<String, String> loader) {
+        String value = cache.get(userId, k -> {
+            String sessionId = loader.apply(k);
+            return sessionId != null ? sessionId : OFFLINE;
+        });
+        return OFFLINE.equals(value) ? null : value;
+    }
+
+    /**
+     * Session ids for many users; misses are loaded together by the bulk loader.
+     * Offline users are absent from the result.
+     */
+    public Map<String, String> getAll(Collection<String> userIds,
+                                      Function<Set<String>, Map<String, String>> bulkLoader) {
+        Map<String, String> cached = cache.getAll(userIds, missing -> {
+            Set<String> keys = new HashSet<>();
+            missing.forEach(keys::add);
+            Map<String, String> loaded = bulkLoader.apply(keys);
+            Map<String, String> values = new HashMap<>(keys.size() * 2);
+            for (String userId : keys) {
+                values.put(userId, loaded.getOrDefault(userId, OFFLINE));
+            }
+            return values;
+        });
+        Map<String, String> sessions = new HashMap<>(cached.size() * 2);
+        cached.forEach((userId, value) -> {
+            if (!OFFLINE.equals(value)) {
+                sessions.put(userId, value);
+            }
+        });
+        return sessions;
+    }
+
+    /**
+     * Write-through for presence changes made by this node; sessionId null means offline
+     */
+    public void recordLocalWrite(String userId, String sessionId) {
+        cache.put(userId, sessionId != null ? sessionId : OFFLINE);
+        if (localWrites.size() >= MAX_TRACKED_WRITES) {
+            localWrites.clear();
+        }
+        localWrites.put(userId, System.nanoTime());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        int idx = channel.indexOf(PresenceService.PRESENCE_KEY_PREFIX);
+        if (idx < 0) {
+            return;
+        }
+        String userId = channel.substring(idx + PresenceService.PRESENCE_KEY_PREFIX.length());
+
+        cache.policy().expireAfterWrite().flatMap(policy -> policy.ageOf(userId))
+            .ifPresent(age -> entryAgeAtInvalidation.record(age));
+        cache.invalidate(userId);
+        invalidations.increment();
+
+        Long writtenAt = localWrites.remove(userId);
+        if (writtenAt != null) {
+            invalidationLag.record(System.nanoTime() - writtenAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
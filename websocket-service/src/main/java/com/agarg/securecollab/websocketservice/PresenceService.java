@@ -1,41 +1,112 @@
 package com.agarg.securecollab.websocketservice;
 
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
 
 /**
- * PresenceService — stores simple online presence in Redis with TTL
+ * PresenceService — stores simple online presence in Redis with TTL.
+ * Writes go through {@link PresenceHeartbeatBatcher}; reads are served from
+ * {@link PresenceNearCache}, with misses loaded by GET or a single MGET.
  */
 @Service
 public class PresenceService {
-    private static final String PRESENCE_KEY_PREFIX = "presence:";
+    static final String PRESENCE_KEY_PREFIX = "presence:";
+    static final Duration PRESENCE_TTL = Duration.ofMinutes(10);
+
+    // Delete the presence key only if it still points at one of the given sessions
+    static final RedisScript<Long> COMPARE_AND_DELETE = new DefaultRedisScript<>(
+        "local current = redis.call('GET', KEYS[1]) " +
+        "for i = 1, #ARGV do if current == ARGV[i] then return redis.call('DEL', KEYS[1]) end end return 0",
+        Long.class);
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final Duration ttl = Duration.ofMinutes(10);
+    private final PresenceHeartbeatBatcher heartbeatBatcher;
+    private final PresenceNearCache nearCache;
 
-    public PresenceService(RedisTemplate<String, String> redisTemplate) {
+    public PresenceService(RedisTemplate<String, String> redisTemplate,
+                           PresenceHeartbeatBatcher heartbeatBatcher,
+                           PresenceNearCache nearCache) {
         this.redisTemplate = redisTemplate;
+        this.heartbeatBatcher = heartbeatBatcher;
+        this.nearCache = nearCache;
     }
 
+    /**
+     * Register the session; its presence key is written on the next batched flush
+     */
     public void markOnline(String userId, String sessionId) {
-        String key = PRESENCE_KEY_PREFIX + userId;
-        redisTemplate.opsForValue().set(key, sessionId, ttl.toMillis(), TimeUnit.MILLISECONDS);
+        heartbeatBatcher.register(userId, sessionId);
+        nearCache.recordLocalWrite(userId, sessionId);
     }
 
-    public void markOffline(String userId) {
-        String key = PRESENCE_KEY_PREFIX + userId;
-        redisTemplate.delete(key);
+    /**
+     * Close one session. The user goes offline only when it was their last session on this node,
+     * and only if the presence key still belongs to this node's sessions, so a newer connection
+     * of the same user (possibly on another node) is left intact
+     */
+    public void markOffline(String userId, String sessionId) {
+        List<String> stale = heartbeatBatcher.unregister(userId, sessionId);
+        if (stale.isEmpty()) {
+            return;
+        }
+        Long deleted = redisTemplate.execute(COMPARE_AND_DELETE, List.of(PRESENCE_KEY_PREFIX + userId),
+            stale.toArray());
+        if (deleted != null && deleted > 0) {
+            nearCache.recordLocalWrite(userId, null);
+        }
     }
 
     public boolean isOnline(String userId) {
-        String key = PRESENCE_KEY_PREFIX + userId;
-        return redisTemplate.hasKey(key);
+        return getSessionId(userId) != null;
     }
 
     public String getSessionId(String userId) {
-        String key = PRESENCE_KEY_PREFIX + userId;
-        return redisTemplate.opsForValue().get(key);
+        return nearCache.get(userId, id -> redisTemplate.opsForValue().get(PRESENCE_KEY_PREFIX + id));
+    }
+
+    /**
+     * Online state for many users; near-cache misses are loaded with one MGET
+     */
+    public Map<String, Boolean> isOnline(Collection<String> userIds) {
+        Map<String, String> sessions = getSessions(userIds);
+        Map<String, Boolean> online = new HashMap<>(userIds.size() * 2);
+        for (String userId : userIds) {
+            online.put(userId, sessions.containsKey(userId));
+        }
+        return online;
+    }
+
+    /**
+     * Session ids for many users; offline users are absent from the result
+     */
+    public Map<String, String> getSessions(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return nearCache.getAll(userIds, this::loadSessions);
+    }
+
+    private Map<String, String> loadSessions(Collection<String> userIds) {
+        List<String> ordered = new ArrayList<>(userIds);
+        List<String> keys = new ArrayList<>(ordered.size());
+        for (String userId : ordered) {
+            keys.add(PRESENCE_KEY_PREFIX + userId);
+        }
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        Map<String, String> sessions = new HashMap<>(ordered.size() * 2);
+        if (values == null) {
+            return sessions;
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            String sessionId = values.get(i);
+            if (sessionId != null) {
+                sessions.put(ordered.get(i), sessionId);
+            }
+        }
+        return sessions;
     }
 }
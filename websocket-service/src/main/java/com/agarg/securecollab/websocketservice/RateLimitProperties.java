@@ -0,0 +1,47 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Rate limit policies per STOMP endpoint (websocket.rate-limit.*)
+ */
+@Component
+@ConfigurationProperties(prefix = "websocket.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * Strategy name that selects the hybrid local-bucket limiter in RateLimitService
+     */
+    public static final String LOCAL_STRATEGY = "local";
+
+    private Policy defaults = new Policy();
+    private Map<String, Policy> endpoints = new HashMap<>();
+
+    public Policy policyFor(String endpoint) {
+        return endpoints.getOrDefault(endpoint, defaults);
+    }
+
+    public Policy getDefaults() { return defaults; }
+    public void setDefaults(Policy defaults) { this.defaults = defaults; }
+
+    public Map<String, Policy> getEndpoints() { return endpoints; }
+    public void setEndpoints(Map<String, Policy> endpoints) { this.endpoints = endpoints; }
+
+    public static class Policy {
+        private String strategy = LOCAL_STRATEGY;
+        private int limit = 20;
+        private Duration window = Duration.ofSeconds(10);
+
+        public String getStrategy() { return strategy; }
+        public void setStrategy(String strategy) { this.strategy = strategy; }
+
+        public int getLimit() { return limit; }
+        public void setLimit(int limit) { this.limit = limit; }
+
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+    }
+}
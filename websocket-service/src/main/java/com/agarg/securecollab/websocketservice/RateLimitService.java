@@ -1,35 +1,265 @@
 package com.agarg.securecollab.websocketservice;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Simple Redis-backed rate limiter using increment+expire.
- * Counts events per user per window and enforces a max.
+ * Rate limiter with per-endpoint strategies.
+ * The default "local" strategy is a hybrid limiter: decisions are made against lock-free per-user
+ * buckets held on this node; consumption is reconciled with the shared Redis window counter in
+ * batches (one Lua call per batch) every websocket.rate-limit.sync-interval-ms. After each sync a bucket's local allowance is reset to
+ * the global remaining budget, so cluster-wide over-admission is bounded by what other nodes
+ * admit within a single sync interval. Endpoints may instead select a {@link RateLimitStrategy}
+ * (fixed-window, sliding-log, sliding-counter, gcra) via websocket.rate-limit.endpoints.
  */
 @Service
 public class RateLimitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitService.class);
+
     private static final String RATE_KEY_PREFIX = "rate:";
+    private static final int SYNC_BATCH_SIZE = 500;
+
+    // KEYS = window counters, ARGV[1] = ttl ms, ARGV[i + 1] = local delta for KEYS[i]
+    private static final RedisScript<List> RECONCILE_SCRIPT = new DefaultRedisScript<>(
+        "local ttl = tonumber(ARGV[1]) " +
+        "local counts = {} " +
+        "for i, key in ipairs(KEYS) do " +
+        "  local delta = tonumber(ARGV[i + 1]) " +
+        "  local count = redis.call('INCRBY', key, delta) " +
+        "  if count == delta then redis.call('PEXPIRE', key, ttl) end " +
+        "  counts[i] = count " +
+        "end " +
+        "return counts", List.class);
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final int defaultLimit = 20; // messages
-    private final Duration window = Duration.ofSeconds(10);
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    // strategy name -> strategy
+    private final Map<String, RateLimitStrategy> strategies = new HashMap<>();
 
-    public RateLimitService(RedisTemplate<String, String> redisTemplate) {
+    // key:windowMs -> local bucket
+    private final Map<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+
+    // strategy name -> decision latency
+    private final Map<String, Timer> decisionLatency = new ConcurrentHashMap<>();
+    private final Timer syncLatency;
+    private final Counter rejected;
+
+    public RateLimitService(RedisTemplate<String, String> redisTemplate,
+                            RateLimitProperties properties,
+                            List<RateLimitStrategy> strategies,
+                            MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        for (RateLimitStrategy strategy : strategies) {
+            this.strategies.put(strategy.name(), strategy);
+        }
+        validatePolicies();
+        this.syncLatency = Timer.builder("websocket.ratelimit.sync")
+            .description("Latency of a batched Redis reconciliation")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.rejected = Counter.builder("websocket.ratelimit.rejected")
+            .description("Requests rejected by the rate limiter")
+            .register(meterRegistry);
     }
 
     public boolean tryConsume(String userId) {
-        return tryConsume(userId, defaultLimit, window);
+        RateLimitProperties.Policy defaults = properties.getDefaults();
+        return tryConsume(userId, defaults.getLimit(), defaults.getWindow());
     }
 
     public boolean tryConsume(String userId, int limit, Duration window) {
-        String key = RATE_KEY_PREFIX + userId + ":" + (System.currentTimeMillis() / window.toMillis());
-        Long count = redisTemplate.opsForValue().increment(key);
-        if (count != null && count == 1L) {
-            redisTemplate.expire(key, window.toMillis(), TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        boolean allowed = tryConsumeLocal(userId, limit, window);
+        record(RateLimitProperties.LOCAL_STRATEGY, start, allowed);
+        return allowed;
+    }
+
+    /**
+     * Consume a permit under the policy configured for a STOMP endpoint, e.g. "chat.send"
+     */
+    public boolean tryConsume(String endpoint, String userId) {
+        RateLimitProperties.Policy policy = properties.policyFor(endpoint);
+        String key = endpoint + ":" + userId;
+        long start = System.nanoTime();
+        boolean allowed;
+        // Names are validated at startup, so null here means the local strategy
+        RateLimitStrategy strategy = strategies.get(policy.getStrategy());
+        if (strategy == null) {
+            allowed = tryConsumeLocal(key, policy.getLimit(), policy.getWindow());
+        } else {
+            allowed = strategy.tryConsume(key, policy.getLimit(), policy.getWindow());
+        }
+        record(strategy != null ? strategy.name() : RateLimitProperties.LOCAL_STRATEGY, start, allowed);
+        return allowed;
+    }
+
+    /**
+     * Fail startup on a strategy name that matches no registered strategy, rather than silently
+     * limiting that endpoint with local buckets
+     */
+    private void validatePolicies() {
+        Map<String, RateLimitProperties.Policy> policies = new LinkedHashMap<>();
+        policies.put("defaults", properties.getDefaults());
+        properties.getEndpoints().forEach((endpoint, policy) -> policies.put("endpoints." + endpoint, policy));
+        policies.forEach((name, policy) -> {
+            String strategy = policy.getStrategy();
+            if (!RateLimitProperties.LOCAL_STRATEGY.equals(strategy) && !strategies.containsKey(strategy)) {
+                throw new IllegalStateException("Unknown rate limit strategy '" + strategy
+                    + "' for websocket.rate-limit." + name + "; expected one of "
+                    + RateLimitProperties.LOCAL_STRATEGY + ", " + String.join(", ", new TreeSet<>(strategies.keySet())));
+            }
+        });
+    }
+
+    private boolean tryConsumeLocal(String key, int limit, Duration window) {
+        long windowMs = window.toMillis();
+        long windowId = System.currentTimeMillis() / windowMs;
+        LocalBucket bucket = buckets.computeIfAbsent(key + ":" + windowMs,
+            k -> new LocalBucket(key, limit, windowMs));
+        return bucket.tryAcquire(windowId);
+    }
+
+    private void record(String strategy, long startNanos, boolean allowed) {
+        decisionLatency.computeIfAbsent(strategy, s -> Timer.builder("websocket.ratelimit.decision")
+                .description("Per-decision latency of the rate limiter")
+                .tag("strategy", s)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry))
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (!allowed) {
+            rejected.increment();
+        }
+    }
+
+    /**
+     * Push local consumption to Redis and pull back the global count for every active bucket
+     */
+    @Scheduled(fixedDelayString = "${websocket.rate-limit.sync-interval-ms:100}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+        List<PendingSync> batch = new ArrayList<>(Math.min(buckets.size(), SYNC_BATCH_SIZE));
+
+        Iterator<LocalBucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            LocalBucket bucket = it.next();
+            long currentWindowId = now / bucket.windowMs;
+            Window w = bucket.current.get();
+            if (w.id < currentWindowId - 1) {
+                it.remove(); // idle for more than a full window
+                continue;
+            }
+            if (w.id != currentWindowId) {
+                continue;
+            }
+            batch.add(new PendingSync(bucket, w, w.unsynced.getAndSet(0)));
+            if (batch.size() == SYNC_BATCH_SIZE) {
+                flush(batch);
+                batch = new ArrayList<>(SYNC_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<PendingSync> batch) {
+        long start = System.nanoTime();
+        List<String> keys = new ArrayList<>(batch.size());
+        String[] args = new String[batch.size() + 1];
+        long ttlMs = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            PendingSync sync = batch.get(i);
+            keys.add(RATE_KEY_PREFIX + sync.bucket.key + ":" + sync.bucket.windowMs + ":" + sync.window.id);
+            args[i + 1] = Integer.toString(sync.delta);
+            ttlMs = Math.max(ttlMs, sync.bucket.windowMs);
+        }
+        args[0] = Long.toString(ttlMs);
+
+        try {
+            List<?> counts = redisTemplate.execute(RECONCILE_SCRIPT, keys, (Object[]) args);
+            for (int i = 0; i < batch.size(); i++) {
+                PendingSync sync = batch.get(i);
+                long global = ((Number) counts.get(i)).longValue();
+                // Local consumption made while the script was in flight is still unsynced
+                long remaining = sync.bucket.limit - global - sync.window.unsynced.get();
+                sync.window.remaining.set((int) Math.max(0, remaining));
+            }
+        } catch (Exception e) {
+            // Keep deciding locally; return the deltas so the next sync retries them
+            for (PendingSync sync : batch) {
+                sync.window.unsynced.addAndGet(sync.delta);
+            }
+            logger.warn("Rate limit reconciliation failed for {} buckets: {}", batch.size(), e.getMessage());
+        } finally {
+            syncLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private record PendingSync(LocalBucket bucket, Window window, int delta) { }
+
+    /**
+     * Per-key bucket; the current window is swapped atomically on rollover
+     */
+    private static class LocalBucket {
+        private final String key;
+        private final int limit;
+        private final long windowMs;
+        private final AtomicReference<Window> current;
+
+        LocalBucket(String key, int limit, long windowMs) {
+            this.key = key;
+            this.limit = limit;
+            this.windowMs = windowMs;
+            this.current = new AtomicReference<>(new Window(-1, 0));
+        }
+
+        boolean tryAcquire(long windowId) {
+            Window w = current.get();
+            if (w.id != windowId) {
+                Window fresh = new Window(windowId, limit);
+                w = current.compareAndSet(w, fresh) ? fresh : current.get();
+            }
+            while (true) {
+                int remaining = w.remaining.get();
+                if (remaining <= 0) {
+                    return false;
+                }
+                if (w.remaining.compareAndSet(remaining, remaining - 1)) {
+                    w.unsynced.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static class Window {
+        private final long id;
+        private final AtomicInteger remaining;
+        private final AtomicInteger unsynced = new AtomicInteger();
+
+        Window(long id, int remaining) {
+            this.id = id;
+            this.remaining = new AtomicInteger(remaining);
         }
-        return count != null && count <= limit;
     }
 }
@@ -0,0 +1,25 @@
+package com.agarg.securecollab.websocketservice;
+
+import java.time.Duration;
+
+/**
+ * Rate limiting algorithm SPI.
+ * Each implementation decides with a single atomic Redis script call; endpoints pick one by
+ * {@link #name()} under websocket.rate-limit.endpoints.
+ */
+public interface RateLimitStrategy {
+
+    /**
+     * Strategy name used in configuration, e.g. "gcra"
+     */
+    String name();
+
+    /**
+     * Consume one permit for the key if allowed
+     * @param key limiter key, typically endpoint + user
+     * @param limit permits per window
+     * @param window window length
+     * @return true if the request is admitted
+     */
+    boolean tryConsume(String key, int limit, Duration window);
+}
@@ -0,0 +1,144 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Redis pub/sub backplane (websocket.broker.mode=redis)
+ * Every node publishes pre-encoded frames to Redis and delivers them locally on receipt.
+ * Each node subscribes only to the topic destinations that have local subscribers and to
+ * the users connected to it, so it never receives traffic it cannot deliver.
+ * Typing destinations carry per-node snapshots, which {@link TypingAggregator} merges before
+ * local delivery.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.broker.mode", havingValue = "redis")
+public class RedisBackplane implements MessageListener, ChannelMembershipIndex.MembershipListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisBackplane.class);
+
+    private static final String TOPIC_CHANNEL_PREFIX = "ws:topic:";
+    private static final String USER_CHANNEL_PREFIX = "ws:user:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ChannelMembershipIndex membershipIndex;
+    private final SessionRegistry sessionRegistry;
+    private final ChannelFanoutEngine fanoutEngine;
+    private final BroadcastFrameEncoder frameEncoder;
+    private final TypingAggregator typingAggregator;
+
+    // Redis channels this node is currently subscribed to
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+
+    public RedisBackplane(RedisTemplate<String, String> redisTemplate,
+                          RedisMessageListenerContainer listenerContainer,
+                          ChannelMembershipIndex membershipIndex,
+                          SessionRegistry sessionRegistry,
+                          ChannelFanoutEngine fanoutEngine,
+                          BroadcastFrameEncoder frameEncoder,
+                          TypingAggregator typingAggregator) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.membershipIndex = membershipIndex;
+        this.sessionRegistry = sessionRegistry;
+        this.fanoutEngine = fanoutEngine;
+        this.frameEncoder = frameEncoder;
+        this.typingAggregator = typingAggregator;
+    }
+
+    @PostConstruct
+    public void init() {
+        membershipIndex.addListener(this);
+        logger.info("Redis backplane enabled");
+    }
+
+    /**
+     * Publish a topic frame to every node with local subscribers
+     */
+    public void publish(String destination, BroadcastFrameEncoder.EncodedFrame frame) {
+        byte[] channel = (TOPIC_CHANNEL_PREFIX + destination).getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, frame.body()));
+    }
+
+    /**
+     * Publish a user-destination frame to the nodes the user is connected to
+     */
+    public void publishToUser(String userId, String destination, BroadcastFrameEncoder.EncodedFrame frame) {
+        byte[] channel = (USER_CHANNEL_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+        byte[] header = (destination + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] message = new byte[header.length + frame.size()];
+        System.arraycopy(header, 0, message, 0, header.length);
+        System.arraycopy(frame.body(), 0, message, header.length, frame.size());
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+    }
+
+    @Override
+    public void onDestinationChanged(String destination) {
+        reconcile(TOPIC_CHANNEL_PREFIX + destination, membershipIndex.hasSubscribers(destination));
+    }
+
+    /**
+     * Called by the session registry when a user's first session opens or last session closes
+     */
+    public void onUserChanged(String userId) {
+        reconcile(USER_CHANNEL_PREFIX + userId, sessionRegistry.isConnected(userId));
+    }
+
+    // Serialized so racing activate/deactivate notifications settle on the current state
+    private synchronized void reconcile(String channel, boolean active) {
+        if (active && subscribed.add(channel)) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        } else if (!active && subscribed.remove(channel)) {
+            listenerContainer.removeMessageListener(this, new ChannelTopic(channel));
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        byte[] body = message.getBody();
+        try {
+            if (channel.startsWith(TOPIC_CHANNEL_PREFIX)) {
+                String destination = channel.substring(TOPIC_CHANNEL_PREFIX.length());
+                if (TypingAggregator.isTypingDestination(destination)) {
+                    typingAggregator.onBackplaneSnapshot(body);
+                } else {
+                    fanoutEngine.deliverLocal(destination, new BroadcastFrameEncoder.EncodedFrame(body));
+                }
+            } else if (channel.startsWith(USER_CHANNEL_PREFIX)) {
+                String userId = channel.substring(USER_CHANNEL_PREFIX.length());
+                int newline = indexOf(body, (byte) '\n');
+                if (newline < 0) {
+                    return;
+                }
+                String destination = new String(body, 0, newline, StandardCharsets.UTF_8);
+                byte[] payload = Arrays.copyOfRange(body, newline + 1, body.length);
+                frameEncoder.sendToUserLocal(userId, destination, new BroadcastFrameEncoder.EncodedFrame(payload));
+            }
+        } catch (Exception e) {
+            logger.error("Error delivering backplane message from {}", channel, e);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,191 @@
+package com.agarg.securecollab.websocketservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replay buffer for resumable sessions
+ * Every outbound MESSAGE frame of a user's session is stamped with a "replay-seq" header and
+ * kept in a bounded per-session ring. Rings outlive their session by the resume window, so a
+ * client that reconnects in time can present its previous session id and last-seen sequence
+ * and get only the missed frames, without a database read.
+ * Frames are recorded before the compact format swap, so the ring holds the JSON body (plus
+ * the compact body, where one was encoded) and a replay is re-encoded for the resuming session.
+ */
+@Component
+public class ReplayBuffer implements ChannelInterceptor {
+
+    public static final String SEQ_HEADER = "replay-seq";
+    public static final String ORIGINAL_DESTINATION_HEADER = "original-destination";
+
+    // Set on frames sent during a resume so they are not recorded again
+    private static final String REPLAYED_HEADER = "replayed";
+
+    private final SessionRegistry sessionRegistry;
+    private final int capacity;
+    private final long resumeWindowMs;
+
+    // sessionId -> ring of recent outbound frames
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    private final Counter resumed;
+    private final Counter gaps;
+    private final Counter framesReplayed;
+
+    public ReplayBuffer(SessionRegistry sessionRegistry,
+                        MeterRegistry meterRegistry,
+                        @Value("${websocket.replay.capacity:256}") int capacity,
+                        @Value("${websocket.replay.resume-window:30s}") Duration resumeWindow) {
+        this.sessionRegistry = sessionRegistry;
+        this.capacity = capacity;
+        this.resumeWindowMs = resumeWindow.toMillis();
+        Gauge.builder("websocket.replay.sessions", rings, Map::size)
+            .description("Sessions with a replay buffer, including recently disconnected ones")
+            .register(meterRegistry);
+        this.resumed = Counter.builder("websocket.replay.resumes")
+            .description("Reconnects served from the replay buffer")
+            .tag("outcome", "replayed")
+            .register(meterRegistry);
+        this.gaps = Counter.builder("websocket.replay.resumes")
+            .description("Reconnects served from the replay buffer")
+            .tag("outcome", "gap")
+            .register(meterRegistry);
+        this.framesReplayed = Counter.builder("websocket.replay.frames")
+            .description("Frames re-sent to resumed sessions")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        Map<String, Object> headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || headers.containsKey(REPLAYED_HEADER)) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String userId = sessionRegistry.getUserId(sessionId);
+        if (userId == null) {
+            return message;
+        }
+        Ring ring = rings.computeIfAbsent(sessionId, k -> new Ring(userId, capacity));
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        // User destinations are delivered as /queue/x-user{sessionId}; keep the /user/... form
+        Object original = headers.get(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+        String destination = original instanceof String d ? d : accessor.getDestination();
+        Object compact = headers.get(CompactFormatNegotiator.COMPACT_PAYLOAD_HEADER);
+        long seq = ring.append(destination, accessor.getContentType(),
+            compact instanceof byte[] bytes ? bytes : null, message.getPayload());
+        accessor.setNativeHeader(SEQ_HEADER, Long.toString(seq));
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Ring ring = rings.get(event.getSessionId());
+        if (ring != null) {
+            ring.closedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Frames after lastSeq from a previous session of the same user, and drop that ring.
+     * Returns null if the gap cannot be filled (unknown or expired session, other user,
+     * or frames already overwritten) so the client falls back to a full sync.
+     */
+    public List<Frame> resume(String userId, String previousSessionId, long lastSeq) {
+        Ring ring = previousSessionId != null ? rings.get(previousSessionId) : null;
+        List<Frame> frames = ring != null && ring.userId.equals(userId) ? ring.since(lastSeq) : null;
+        if (frames == null) {
+            gaps.increment();
+            return null;
+        }
+        rings.remove(previousSessionId, ring);
+        resumed.increment();
+        framesReplayed.increment(frames.size());
+        return frames;
+    }
+
+    /**
+     * Mark a message as a replayed frame so it bypasses recording
+     */
+    public static void markReplayed(SimpMessageHeaderAccessor accessor, Frame frame) {
+        accessor.setHeader(REPLAYED_HEADER, Boolean.TRUE);
+        accessor.setNativeHeader(SEQ_HEADER, Long.toString(frame.seq()));
+        accessor.setNativeHeader(ORIGINAL_DESTINATION_HEADER, frame.destination());
+        if (frame.contentType() != null) {
+            accessor.setContentType(frame.contentType());
+        }
+        if (frame.compact() != null) {
+            accessor.setHeader(CompactFormatNegotiator.COMPACT_PAYLOAD_HEADER, frame.compact());
+        }
+    }
+
+    /**
+     * Drop rings of sessions closed longer than the resume window
+     */
+    @Scheduled(fixedDelayString = "${websocket.replay.sweep-interval-ms:5000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - resumeWindowMs;
+        rings.values().removeIf(ring -> ring.closedAt > 0 && ring.closedAt < cutoff);
+    }
+
+    /**
+     * A recorded frame: the canonical body and, for chat messages, the compact body (or null)
+     */
+    public record Frame(long seq, String destination, MimeType contentType, byte[] compact, Object payload) { }
+
+    /**
+     * Fixed-size ring; sequence numbers start at 1 and slot = seq % capacity
+     */
+    private static final class Ring {
+        private final String userId;
+        private final Frame[] frames;
+        private long lastSeq;
+        private volatile long closedAt;
+
+        Ring(String userId, int capacity) {
+            this.userId = userId;
+            this.frames = new Frame[capacity];
+        }
+
+        synchronized long append(String destination, MimeType contentType, byte[] compact, Object payload) {
+            long seq = ++lastSeq;
+            frames[(int) (seq % frames.length)] = new Frame(seq, destination, contentType, compact, payload);
+            return seq;
+        }
+
+        /**
+         * @return frames after seq, or null if some of them were already overwritten
+         */
+        synchronized List<Frame> since(long seq) {
+            if (seq >= lastSeq) {
+                return Collections.emptyList();
+            }
+            long oldest = Math.max(1, lastSeq - frames.length + 1);
+            if (seq + 1 < oldest || seq < 0) {
+                return null;
+            }
+            List<Frame> missed = new ArrayList<>((int) (lastSeq - seq));
+            for (long s = seq + 1; s <= lastSeq; s++) {
+                missed.add(frames[(int) (s % frames.length)]);
+            }
+            return missed;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session Registry
+ * Thread-safe user <-> session index supporting multiple devices per user.
+ * User entries are spread over lock-striped shards; session lookups use a concurrent map,
+ * and channel lookups are answered by {@link ChannelMembershipIndex}.
+ */
+@Component
+public class SessionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionRegistry.class);
+
+    private static final int SHARD_COUNT = 64; // power of two
+
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    // sessionId -> session
+    private final Map<String, SessionInfo> sessions = new ConcurrentHashMap<>();
+
+    private final ChannelMembershipIndex membershipIndex;
+    private final PresenceService presenceService;
+    private final ObjectProvider<RedisBackplane> backplaneProvider;
+
+    public SessionRegistry(ChannelMembershipIndex membershipIndex,
+                           PresenceService presenceService,
+                           ObjectProvider<RedisBackplane> backplaneProvider) {
+        this.membershipIndex = membershipIndex;
+        this.presenceService = presenceService;
+        this.backplaneProvider = backplaneProvider;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Register a session for a user; re-registering the same session is a no-op
+     */
+    public void register(String userId, String sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        SessionInfo previous = sessions.putIfAbsent(sessionId, new SessionInfo(sessionId, userId, System.currentTimeMillis()));
+        if (previous != null) {
+            return;
+        }
+        if (shardFor(userId).add(userId, sessionId)) {
+            backplaneProvider.ifAvailable(backplane -> backplane.onUserChanged(userId));
+        }
+    }
+
+    /**
+     * Remove a session
+     * @return the removed session, or null if it was not registered
+     */
+    public SessionInfo unregister(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        SessionInfo info = sessions.remove(sessionId);
+        if (info != null && shardFor(info.userId()).remove(info.userId(), sessionId)) {
+            backplaneProvider.ifAvailable(backplane -> backplane.onUserChanged(info.userId()));
+        }
+        return info;
+    }
+
+    public Set<String> getSessions(String userId) {
+        return userId != null ? shardFor(userId).get(userId) : Collections.emptySet();
+    }
+
+    public String getUserId(String sessionId) {
+        SessionInfo info = sessions.get(sessionId);
+        return info != null ? info.userId() : null;
+    }
+
+    public boolean isConnected(String userId) {
+        return userId != null && shardFor(userId).contains(userId);
+    }
+
+    /**
+     * Sessions on this node subscribed to a channel, as a live unmodifiable view; copy it to
+     * keep a stable snapshot
+     */
+    public Set<String> getChannelSessions(String channelId) {
+        return membershipIndex.getSessions(ChannelMembershipIndex.CHANNEL_DESTINATION_PREFIX + channelId);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @EventListener
+    public void onSessionConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Principal user = event.getUser();
+        String userId = user != null ? user.getName() : accessor.getFirstNativeHeader(StompPrincipalInterceptor.USER_ID_HEADER);
+        register(userId, accessor.getSessionId());
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        SessionInfo info = unregister(event.getSessionId());
+        if (info != null) {
+            // Always, so the heartbeat batcher stops renewing this session; the presence key
+            // only goes once the user's last session on this node is closed
+            presenceService.markOffline(info.userId(), info.sessionId());
+            if (!isConnected(info.userId())) {
+                logger.debug("Last session closed for user {}", info.userId());
+            }
+        }
+    }
+
+    private Shard shardFor(String userId) {
+        int h = userId.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARD_COUNT - 1)];
+    }
+
+    public record SessionInfo(String sessionId, String userId, long connectedAt) { }
+
+    /**
+     * One lock stripe: userId -> sessions of that user
+     */
+    private static final class Shard {
+        private final Map<String, Set<String>> sessionsByUser = new HashMap<>();
+
+        /**
+         * @return true if this is the user's first session
+         */
+        synchronized boolean add(String userId, String sessionId) {
+            Set<String> userSessions = sessionsByUser.computeIfAbsent(userId, k -> new HashSet<>(2));
+            userSessions.add(sessionId);
+            return userSessions.size() == 1;
+        }
+
+        /**
+         * @return true if this was the user's last session
+         */
+        synchronized boolean remove(String userId, String sessionId) {
+            Set<String> userSessions = sessionsByUser.get(userId);
+            if (userSessions != null && userSessions.remove(sessionId) && userSessions.isEmpty()) {
+                sessionsByUser.remove(userId);
+                return true;
+            }
+            return false;
+        }
+
+        synchronized Set<String> get(String userId) {
+            Set<String> userSessions = sessionsByUser.get(userId);
+            return userSessions != null ? Set.copyOf(userSessions) : Collections.emptySet();
+        }
+
+        synchronized boolean contains(String userId) {
+            return sessionsByUser.containsKey(userId);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Sliding window counter: weights the previous window's count by its remaining overlap.
+ * Keeps window id, current and previous counts in a single hash, so one key per user.
+ */
+@Component
+public class SlidingCounterRateLimitStrategy implements RateLimitStrategy {
+
+    private static final String KEY_PREFIX = "rate:sc:";
+
+    // KEYS[1] = hash key (fields w, c, p), ARGV[1] = limit, ARGV[2] = window ms
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>(
+        "local limit = tonumber(ARGV[1]) " +
+        "local window = tonumber(ARGV[2]) " +
+        "local now = redis.call('TIME') " +
+        "local nowMs = now[1] * 1000 + math.floor(now[2] / 1000) " +
+        "local cw = math.floor(nowMs / window) " +
+        "local state = redis.call('HMGET', KEYS[1], 'w', 'c', 'p') " +
+        "local w = tonumber(state[1]) or cw " +
+        "local c = tonumber(state[2]) or 0 " +
+        "local p = tonumber(state[3]) or 0 " +
+        "if w ~= cw then " +
+        "  if w == cw - 1 then p = c else p = 0 end " +
+        "  c = 0 " +
+        "end " +
+        "local elapsed = (nowMs % window) / window " +
+        "if p * (1 - elapsed) + c + 1 > limit then " +
+        "  redis.call('HSET', KEYS[1], 'w', cw, 'c', c, 'p', p) " +
+        "  return 0 " +
+        "end " +
+        "redis.call('HSET', KEYS[1], 'w', cw, 'c', c + 1, 'p', p) " +
+        "redis.call('PEXPIRE', KEYS[1], window * 2) " +
+        "return 1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public SlidingCounterRateLimitStrategy(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String name() {
+        return "sliding-counter";
+    }
+
+    @Override
+    public boolean tryConsume(String key, int limit, Duration window) {
+        Long allowed = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + key),
+            Integer.toString(limit), Long.toString(window.toMillis()));
+        return allowed != null && allowed == 1L;
+    }
+}
@@ -0,0 +1,48 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Sliding log: one sorted set per user holding admitted request timestamps.
+ * Exact, but memory grows with the limit (one ZSET member per admitted request).
+ */
+@Component
+public class SlidingLogRateLimitStrategy implements RateLimitStrategy {
+
+    private static final String KEY_PREFIX = "rate:log:";
+
+    // KEYS[1] = log key, ARGV[1] = limit, ARGV[2] = window ms, ARGV[3] = unique member
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>(
+        "local window = tonumber(ARGV[2]) " +
+        "local now = redis.call('TIME') " +
+        "local nowMs = now[1] * 1000 + math.floor(now[2] / 1000) " +
+        "redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, nowMs - window) " +
+        "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[1]) then return 0 end " +
+        "redis.call('ZADD', KEYS[1], nowMs, ARGV[3]) " +
+        "redis.call('PEXPIRE', KEYS[1], window) " +
+        "return 1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public SlidingLogRateLimitStrategy(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String name() {
+        return "sliding-log";
+    }
+
+    @Override
+    public boolean tryConsume(String key, int limit, Duration window) {
+        Long allowed = redisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + key),
+            Integer.toString(limit), Long.toString(window.toMillis()), UUID.randomUUID().toString());
+        return allowed != null && allowed == 1L;
+    }
+}
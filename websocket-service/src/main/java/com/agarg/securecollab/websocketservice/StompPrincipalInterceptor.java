@@ -0,0 +1,43 @@
+package com.agarg.securecollab.websocketservice;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import java.security.Principal;
+
+/**
+ * StompPrincipalInterceptor — gives each STOMP session a Principal named after the userId
+ * header of its CONNECT frame, so /user destinations resolve through Spring's user registry.
+ * In relay mode that registry is broadcast between nodes, which lets a frame for a user reach
+ * their sessions on any node.
+ */
+@Component
+public class StompPrincipalInterceptor implements ChannelInterceptor {
+
+    static final String USER_ID_HEADER = "userId";
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand()) || accessor.getUser() != null) {
+            return message;
+        }
+        String userId = accessor.getFirstNativeHeader(USER_ID_HEADER);
+        if (userId != null && !userId.isBlank()) {
+            // Picked up by the STOMP handler for the rest of the session
+            accessor.setUser(new UserPrincipal(userId));
+        }
+        return message;
+    }
+
+    public record UserPrincipal(String userId) implements Principal {
+        @Override
+        public String getName() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.agarg.securecollab.websocketservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typing Indicator Aggregator
+ * Collects typing frames per channel and, once per debounce window, publishes a single
+ * "who is typing" frame to /topic/channel/{id}/typing — only when the set changed.
+ * Typers that stop refreshing are expired automatically.
+ * With the Redis backplane or the broker relay each node only knows its own typers, so nodes
+ * publish per-node snapshots instead (on the backplane, or on the relay topic
+ * /topic/typing-snapshots that every node's system session subscribes to); every node merges
+ * the snapshots it receives for a channel and delivers the union locally. Non-empty snapshots
+ * are re-sent every half stale period so those of a node that went away expire.
+ */
+@Service
+public class TypingAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypingAggregator.class);
+
+    private static final String TYPING_SUFFIX = "/typing";
+    static final String RELAY_SNAPSHOT_DESTINATION = "/topic/typing-snapshots";
+
+    private final ChannelFanoutEngine fanoutEngine;
+    private final BroadcastFrameEncoder frameEncoder;
+    private final ObjectProvider<RedisBackplane> backplaneProvider;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<AbstractBrokerMessageHandler> relayProvider;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long staleAfterMs;
+    private final Counter indicatorsReceived;
+    private final Counter framesPublished;
+    private volatile boolean relayMode;
+
+    // channelId -> typing state for that channel
+    private final Map<String, ChannelTyping> channels = new ConcurrentHashMap<>();
+    // channelId -> per-node snapshots received over the backplane
+    private final Map<String, ClusterTyping> cluster = new ConcurrentHashMap<>();
+
+    public TypingAggregator(ChannelFanoutEngine fanoutEngine,
+                            BroadcastFrameEncoder frameEncoder,
+                            ObjectProvider<RedisBackplane> backplaneProvider,
+                            ObjectMapper objectMapper,
+                            @Qualifier("stompBrokerRelayMessageHandler") ObjectProvider<AbstractBrokerMessageHandler> relayProvider,
+                            MeterRegistry meterRegistry,
+                            @Value("${websocket.typing.stale-after-ms:5000}") long staleAfterMs) {
+        this.fanoutEngine = fanoutEngine;
+        this.frameEncoder = frameEncoder;
+        this.backplaneProvider = backplaneProvider;
+        this.objectMapper = objectMapper;
+        this.relayProvider = relayProvider;
+        this.staleAfterMs = staleAfterMs;
+        this.indicatorsReceived = Counter.builder("websocket.typing.received")
+            .description("Typing indicator frames received from clients")
+            .register(meterRegistry);
+        this.framesPublished = Counter.builder("websocket.typing.published")
+            .description("Aggregated typing frames published to channels")
+            .register(meterRegistry);
+    }
+
+    /**
+     * In relay mode, receive every node's snapshots on the relay's shared system session. Runs
+     * before the relay starts, which is when system subscriptions are made.
+     */
+    @PostConstruct
+    void subscribeRelaySnapshots() {
+        if (!(relayProvider.getIfAvailable() instanceof StompBrokerRelayMessageHandler relay)) {
+            return;
+        }
+        Map<String, MessageHandler> subscriptions = new HashMap<>();
+        if (relay.getSystemSubscriptions() != null) {
+            subscriptions.putAll(relay.getSystemSubscriptions()); // user registry broadcasts
+        }
+        subscriptions.put(RELAY_SNAPSHOT_DESTINATION, message -> onBackplaneSnapshot((byte[]) message.getPayload()));
+        relay.setSystemSubscriptions(subscriptions);
+        relayMode = true;
+    }
+
+    /**
+     * Record a typing start/stop for a user in a channel; published on the next flush
+     */
+    public void record(String channelId, String userId, boolean typing) {
+        if (channelId == null || userId == null) {
+            return;
+        }
+        indicatorsReceived.increment();
+        long now = System.currentTimeMillis();
+        // compute() so a concurrent flush cannot drop the channel between lookup and update
+        channels.compute(channelId, (k, state) -> {
+            ChannelTyping s = state != null ? state : new ChannelTyping();
+            s.update(userId, typing, now);
+            return s;
+        });
+    }
+
+    /**
+     * Publish one frame per channel whose typing set changed during the window
+     */
+    @Scheduled(fixedDelayString = "${websocket.typing.window-ms:300}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        RedisBackplane backplane = backplaneProvider.getIfAvailable();
+        long refreshMs = backplane != null || relayMode ? staleAfterMs / 2 : Long.MAX_VALUE;
+        for (String channelId : channels.keySet()) {
+            ChannelTyping state = channels.get(channelId);
+            if (state == null) {
+                continue;
+            }
+            List<String> typing = state.drainChanged(now, staleAfterMs, refreshMs);
+            if (typing != null) {
+                publish(backplane, channelId, typing);
+            }
+            channels.computeIfPresent(channelId, (k, s) -> s.isIdle() ? null : s);
+        }
+        for (String channelId : cluster.keySet()) {
+            ClusterTyping state = cluster.get(channelId);
+            if (state == null) {
+                continue;
+            }
+            List<String> merged = state.expire(now, staleAfterMs);
+            if (merged != null) {
+                deliverMerged(channelId, merged);
+            }
+            cluster.computeIfPresent(channelId, (k, s) -> s.isIdle() ? null : s);
+        }
+    }
+
+    /**
+     * Whether a topic destination carries per-node typing snapshots when the backplane is on
+     */
+    public static boolean isTypingDestination(String destination) {
+        return destination.startsWith(ChannelMembershipIndex.CHANNEL_DESTINATION_PREFIX)
+            && destination.endsWith(TYPING_SUFFIX);
+    }
+
+    /**
+     * Merge a node's snapshot received over the backplane or relay and deliver the channel's union
+     * to local subscribers if it changed
+     */
+    public void onBackplaneSnapshot(byte[] body) {
+        NodeTypingState snapshot;
+        try {
+            snapshot = objectMapper.readValue(body, NodeTypingState.class);
+        } catch (IOException e) {
+            logger.warn("Dropping malformed typing snapshot: {}", e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // Updated inside compute() so a concurrent flush cannot drop the state mid-update
+        AtomicReference<List<String>> merged = new AtomicReference<>();
+        cluster.compute(snapshot.channelId(), (k, state) -> {
+            ClusterTyping s = state != null ? state : new ClusterTyping();
+            merged.set(s.update(snapshot.node(), snapshot.typing(), now));
+            return s;
+        });
+        if (merged.get() != null) {
+            deliverMerged(snapshot.channelId(), merged.get());
+        }
+    }
+
+    private void publish(RedisBackplane backplane, String channelId, List<String> typing) {
+        try {
+            String destination = ChannelMembershipIndex.CHANNEL_DESTINATION_PREFIX + channelId + TYPING_SUFFIX;
+            if (backplane != null || relayMode) {
+                BroadcastFrameEncoder.EncodedFrame snapshot = new BroadcastFrameEncoder.EncodedFrame(
+                    objectMapper.writeValueAsBytes(new NodeTypingState(channelId, nodeId, typing)));
+                if (backplane != null) {
+                    backplane.publish(destination, snapshot);
+                } else {
+                    frameEncoder.sendToBroker(RELAY_SNAPSHOT_DESTINATION, snapshot);
+                }
+            } else {
+                fanoutEngine.publish(channelId, destination, frameEncoder.encode(new TypingState(channelId, typing)));
+            }
+            framesPublished.increment();
+        } catch (Exception e) {
+            logger.error("Error publishing typing state for channel {}", channelId, e);
+        }
+    }
+
+    private void deliverMerged(String channelId, List<String> typing) {
+        String destination = ChannelMembershipIndex.CHANNEL_DESTINATION_PREFIX + channelId + TYPING_SUFFIX;
+        fanoutEngine.deliverLocal(destination, frameEncoder.encode(new TypingState(channelId, typing)));
+    }
+
+    /**
+     * Compact typing frame: the users currently typing in a channel
+     */
+    public record TypingState(String channelId, List<String> typing) { }
+
+    /**
+     * One node's typers in a channel, exchanged over the backplane
+     */
+    public record NodeTypingState(String channelId, String node, List<String> typing) { }
+
+    private static class ChannelTyping {
+        // userId -> last typing frame (epoch ms)
+        private final Map<String, Long> lastSeen = new HashMap<>();
+        private List<String> published = Collections.emptyList();
+        private long publishedAt;
+
+        synchronized void update(String userId, boolean typing, long now) {
+            if (typing) {
+                lastSeen.put(userId, now);
+            } else {
+                lastSeen.remove(userId);
+            }
+        }
+
+        /**
+         * Expire stale typers and return the new typing set if it differs from the last
+         * published one, or is non-empty and was last published refreshMs ago; otherwise null
+         */
+        synchronized List<String> drainChanged(long now, long staleAfterMs, long refreshMs) {
+            lastSeen.values().removeIf(seen -> now - seen > staleAfterMs);
+            List<String> current = new ArrayList<>(lastSeen.keySet());
+            Collections.sort(current);
+            if (current.equals(published) && (current.isEmpty() || now - publishedAt < refreshMs)) {
+                return null;
+            }
+            published = current;
+            publishedAt = now;
+            return current;
+        }
+
+        synchronized boolean isIdle() {
+            return lastSeen.isEmpty() && published.isEmpty();
+        }
+    }
+
+    private static class ClusterTyping {
+        // nodeId -> that node's typers and when its snapshot arrived (epoch ms)
+        private final Map<String, NodeSnapshot> nodes = new HashMap<>();
+        private List<String> delivered = Collections.emptyList();
+
+        /**
+         * Replace a node's snapshot; returns the merged set if it changed, otherwise null
+         */
+        synchronized List<String> update(String node, List<String> typing, long now) {
+            if (typing == null || typing.isEmpty()) {
+                nodes.remove(node);
+            } else {
+                nodes.put(node, new NodeSnapshot(typing, now));
+            }
+            return mergeIfChanged();
+        }
+
+        /**
+         * Drop snapshots of nodes that stopped refreshing; returns the merged set if it changed
+         */
+        synchronized List<String> expire(long now, long staleAfterMs) {
+            if (!nodes.values().removeIf(snapshot -> now - snapshot.receivedAt() > staleAfterMs)) {
+                return null;
+            }
+            return mergeIfChanged();
+        }
+
+        synchronized boolean isIdle() {
+            return nodes.isEmpty() && delivered.isEmpty();
+        }
+
+        private List<String> mergeIfChanged() {
+            SortedSet<String> union = new TreeSet<>();
+            for (NodeSnapshot snapshot : nodes.values()) {
+                union.addAll(snapshot.typing());
+            }
+            List<String> merged = new ArrayList<>(union);
+            if (merged.equals(delivered)) {
+                return null;
+            }
+            delivered = merged;
+            return merged;
+        }
+    }
+
+    private record NodeSnapshot(List<String> typing, long receivedAt) { }
+}
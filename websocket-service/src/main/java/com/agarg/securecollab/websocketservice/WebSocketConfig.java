@@ -1,22 +1,124 @@
-
 package com.agarg.securecollab.websocketservice;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.*;
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final ChannelMembershipIndex channelMembershipIndex;
+    private final StompPrincipalInterceptor principalInterceptor;
+    private final BrokerProperties brokerProperties;
+    private final ChannelExecutorProperties executorProperties;
+    private final OutboundBackpressureManager backpressureManager;
+    private final CompactFormatNegotiator compactFormatNegotiator;
+    private final CompactChatMessageConverter compactChatMessageConverter;
+    private final FrameCompressionManager frameCompressionManager;
+    private final ReplayBuffer replayBuffer;
+
+    public WebSocketConfig(ChannelMembershipIndex channelMembershipIndex,
+                           StompPrincipalInterceptor principalInterceptor,
+                           BrokerProperties brokerProperties,
+                           ChannelExecutorProperties executorProperties,
+                           OutboundBackpressureManager backpressureManager,
+                           CompactFormatNegotiator compactFormatNegotiator,
+                           CompactChatMessageConverter compactChatMessageConverter,
+                           FrameCompressionManager frameCompressionManager,
+                           ReplayBuffer replayBuffer) {
+        this.channelMembershipIndex = channelMembershipIndex;
+        this.principalInterceptor = principalInterceptor;
+        this.brokerProperties = brokerProperties;
+        this.executorProperties = executorProperties;
+        this.backpressureManager = backpressureManager;
+        this.compactFormatNegotiator = compactFormatNegotiator;
+        this.compactChatMessageConverter = compactChatMessageConverter;
+        this.frameCompressionManager = frameCompressionManager;
+        this.replayBuffer = replayBuffer;
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
+        // Plain WebSocket endpoint; required for binary frames such as the compact chat format
+        registry.addEndpoint("/ws/native").setAllowedOriginPatterns("*")
+            .addInterceptors(compactFormatNegotiator, frameCompressionManager);
+        // Per-session ordering once inbound frames are handled concurrently
+        registry.setPreserveReceiveOrder(executorProperties.isPreserveOrder());
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        if (brokerProperties.getMode() == BrokerProperties.Mode.RELAY) {
+            BrokerProperties.Relay relay = brokerProperties.getRelay();
+            registry.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(relay.getHost())
+                .setRelayPort(relay.getPort())
+                .setClientLogin(relay.getLogin())
+                .setClientPasscode(relay.getPasscode())
+                .setSystemLogin(relay.getLogin())
+                .setSystemPasscode(relay.getPasscode())
+                // Share user sessions across nodes so /user destinations resolve cluster-wide
+                .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                .setUserRegistryBroadcast("/topic/simp-user-registry");
+        } else {
+            // SIMPLE, and REDIS where the backplane carries cross-node traffic
+            registry.enableSimpleBroker("/topic", "/queue");
+        }
         registry.setApplicationDestinationPrefixes("/app");
+        registry.setPreservePublishOrder(executorProperties.isPreserveOrder());
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Bounded per-session send buffers with overflow policy and conflation. Compression is
+        // added last so it wraps the raw session first and runs after the buffer, on the drain thread.
+        registration.addDecoratorFactory(backpressureManager);
+        registration.addDecoratorFactory(frameCompressionManager);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Name the session's user on CONNECT; track /topic/** subscriptions for ChannelFanoutEngine
+        // and the Redis backplane; record per-session wire format negotiated on CONNECT
+        registration.interceptors(principalInterceptor, channelMembershipIndex, compactFormatNegotiator);
+        if (executorProperties.getMode() == ChannelExecutorProperties.Mode.VIRTUAL) {
+            registration.taskExecutor(virtualThreadExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Record before the format swap so the replay buffer keeps the canonical body
+        registration.interceptors(replayBuffer, compactFormatNegotiator);
+        if (executorProperties.getMode() == ChannelExecutorProperties.Mode.VIRTUAL) {
+            registration.taskExecutor(virtualThreadExecutor("ws-outbound-"));
+        }
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(compactChatMessageConverter);
+        return true; // keep the default JSON/string/byte[] converters
+    }
+
+    /**
+     * Pool of virtual worker threads. The core size is the concurrency cap, so a message
+     * starts on a new virtual thread instead of queueing behind a blocked handler.
+     */
+    private ThreadPoolTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // Spring 6.1's executor has no virtual-thread switch; supply a virtual thread factory instead
+        executor.setThreadFactory(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+        executor.setCorePoolSize(executorProperties.getMaxConcurrency());
+        executor.setMaxPoolSize(executorProperties.getMaxConcurrency());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        return executor;
     }
 }